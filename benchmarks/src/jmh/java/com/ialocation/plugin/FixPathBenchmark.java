@@ -0,0 +1,172 @@
+package com.ialocation.plugin;
+
+import com.indooratlas.android.sdk.IALocation;
+import com.indooratlas.android.sdk.IARegion;
+import com.indooratlas.android.sdk.resources.IAFloorPlan;
+import com.indooratlas.android.sdk.resources.IALatLng;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the path from an IndoorAtlas fix to Javascript callbacks.
+ * Run with the GC profiler to see allocation rates next to throughput:
+ *     java -jar benchmarks.jar FixPathBenchmark -prof gc
+ * Build with the Maven project in benchmarks/, see benchmarks/README.md.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FixPathBenchmark {
+
+    private final LocationEncoder encoder = new LocationEncoder();
+    private IALocation location;
+    private IARegion region;
+    private IAFloorPlan floorPlan;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        region = IARegion.floorPlan("7f3c1f0e-6b1a-4c2e-9a57-2d1c4f1b9e21");
+        location = createLocation(region);
+        floorPlan = new BenchmarkFloorPlan();
+    }
+
+    static IALocation createLocation(IARegion region){
+        return new IALocation.Builder()
+                .withLatitude(60.16952)
+                .withLongitude(24.93545)
+                .withAltitude(12.5)
+                .withAccuracy(2.5f)
+                .withBearing(87.0f)
+                .withFloorLevel(3)
+                .withRegion(region)
+                .withTime(System.currentTimeMillis())
+                .build();
+    }
+
+    @Benchmark
+    public String encodeLocation(){
+        return encoder.encodeLocation(location);
+    }
+
+    @Benchmark
+    public String encodeRegion(){
+        return encoder.encodeRegion(region, IndoorLocationListener.TRANSITION_TYPE_ENTER);
+    }
+
+    @Benchmark
+    public void fanOut(FanOutState state){
+        state.listener.onLocationChanged(state.location);
+    }
+
+    @Benchmark
+    public JSONObject errorObject(){
+        return PositionError.getErrorObject(PositionError.POSITION_UNAVAILABLE);
+    }
+
+    @Benchmark
+    public void floorPlanJson(Blackhole blackhole){
+        blackhole.consume(FloorPlanFetcher.getFloorPlanJSON(floorPlan).toString());
+    }
+
+    /**
+     * Listener with watchCount plain watches. Fixes are fanned out on the calling thread in
+     * main threading mode.
+     */
+    @State(Scope.Thread)
+    public static class FanOutState {
+        @Param({"1", "10", "100", "1000"})
+        public int watchCount;
+
+        IndoorLocationListener listener;
+        PositioningWorker worker;
+        IALocation location;
+
+        @Setup(Level.Trial)
+        public void setUp(){
+            location = createLocation(IARegion.floorPlan("7f3c1f0e-6b1a-4c2e-9a57-2d1c4f1b9e21"));
+            worker = new PositioningWorker(PositioningWorker.THREADING_MODE_MAIN);
+            listener = new IndoorLocationListener(new IdlePlugin(), worker, new PluginMetrics());
+            for (int i = 0; i < watchCount; i++){
+                listener.addWatch(Integer.toString(i), new CountingCallbackContext("watch" + i), null);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown(){
+            worker.quit();
+        }
+    }
+
+    /**
+     * Plugin which ignores the listener's session requests.
+     */
+    static class IdlePlugin extends IALocationPlugin {
+        @Override
+        protected void updateLocationRequest(){
+        }
+
+        @Override
+        protected void releasePositioning(){
+        }
+
+        @Override
+        protected void stopPositioning(){
+        }
+    }
+
+    /**
+     * Callback which only counts results, so that the benchmark measures the plugin and not
+     * the WebView bridge.
+     */
+    static class CountingCallbackContext extends CallbackContext {
+        int results;
+
+        CountingCallbackContext(String callbackId){
+            super(callbackId, null);
+        }
+
+        @Override
+        public void sendPluginResult(PluginResult pluginResult){
+            results++;
+        }
+    }
+
+    static class BenchmarkFloorPlan extends IAFloorPlan {
+        @Override public String getId(){ return "7f3c1f0e-6b1a-4c2e-9a57-2d1c4f1b9e21"; }
+        @Override public String getName(){ return "Third floor"; }
+        @Override public String getUrl(){ return "https://example.com/floorplan.png"; }
+        @Override public int getFloorLevel(){ return 3; }
+        @Override public float getBearing(){ return 177.2f; }
+        @Override public int getBitmapHeight(){ return 2048; }
+        @Override public int getBitmapWidth(){ return 3072; }
+        @Override public float getHeightMeters(){ return 60.5f; }
+        @Override public float getWidthMeters(){ return 90.7f; }
+        @Override public float getMetersToPixels(){ return 33.86f; }
+        @Override public float getPixelsToMeters(){ return 0.0295f; }
+        @Override public IALatLng getBottomLeft(){ return new IALatLng(60.1690, 24.9350); }
+        @Override public IALatLng getCenter(){ return new IALatLng(60.1693, 24.9358); }
+        @Override public IALatLng getTopLeft(){ return new IALatLng(60.1696, 24.9350); }
+        @Override public IALatLng getTopRight(){ return new IALatLng(60.1696, 24.9366); }
+    }
+}
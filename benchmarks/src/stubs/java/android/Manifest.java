@@ -0,0 +1,11 @@
+package android;
+
+public final class Manifest {
+    public static final class permission {
+        public static final String ACCESS_COARSE_LOCATION = "android.permission.ACCESS_COARSE_LOCATION";
+        public static final String ACCESS_FINE_LOCATION = "android.permission.ACCESS_FINE_LOCATION";
+        public static final String ACCESS_WIFI_STATE = "android.permission.ACCESS_WIFI_STATE";
+        public static final String CHANGE_WIFI_STATE = "android.permission.CHANGE_WIFI_STATE";
+        public static final String INTERNET = "android.permission.INTERNET";
+    }
+}
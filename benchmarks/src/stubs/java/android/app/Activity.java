@@ -0,0 +1,26 @@
+package android.app;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Desktop stand-in for the Android Activity. runOnUiThread runs the action at once on the main
+ * looper's thread and posts it to the main looper from other threads.
+ */
+public class Activity extends Context {
+    @Override
+    public Context getApplicationContext(){
+        return this;
+    }
+
+    public final void runOnUiThread(Runnable action){
+        Looper mainLooper = Looper.getMainLooper();
+        if (mainLooper.isCurrentThread()){
+            action.run();
+        }
+        else{
+            new Handler(mainLooper).post(action);
+        }
+    }
+}
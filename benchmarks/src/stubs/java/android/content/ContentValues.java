@@ -0,0 +1,41 @@
+package android.content;
+
+import java.util.HashMap;
+
+public class ContentValues {
+    private final HashMap<String, Object> values = new HashMap<String, Object>();
+
+    public ContentValues(){
+    }
+
+    public ContentValues(int size){
+    }
+
+    public void put(String key, String value){
+        values.put(key, value);
+    }
+
+    public void put(String key, Integer value){
+        values.put(key, value);
+    }
+
+    public void put(String key, Long value){
+        values.put(key, value);
+    }
+
+    public void put(String key, Float value){
+        values.put(key, value);
+    }
+
+    public void put(String key, Double value){
+        values.put(key, value);
+    }
+
+    public void putNull(String key){
+        values.put(key, null);
+    }
+
+    public void clear(){
+        values.clear();
+    }
+}
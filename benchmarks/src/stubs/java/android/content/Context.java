@@ -0,0 +1,55 @@
+package android.content;
+
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+
+import java.io.File;
+
+/**
+ * Desktop stand-in for the Android Context. Services and system services are not available.
+ */
+public abstract class Context {
+    public static final String NOTIFICATION_SERVICE = "notification";
+
+    public abstract Context getApplicationContext();
+
+    public File getFilesDir(){
+        return new File(System.getProperty("java.io.tmpdir"), "files");
+    }
+
+    public File getCacheDir(){
+        return new File(System.getProperty("java.io.tmpdir"), "cache");
+    }
+
+    public String getPackageName(){
+        return "com.ialocation.plugin.desktop";
+    }
+
+    public PackageManager getPackageManager(){
+        return new PackageManager();
+    }
+
+    public ApplicationInfo getApplicationInfo(){
+        return new ApplicationInfo();
+    }
+
+    public int checkSelfPermission(String permission){
+        return PackageManager.PERMISSION_GRANTED;
+    }
+
+    public ComponentName startService(Intent service){
+        return null;
+    }
+
+    public ComponentName startForegroundService(Intent service){
+        return null;
+    }
+
+    public boolean stopService(Intent service){
+        return false;
+    }
+
+    public Object getSystemService(String name){
+        return null;
+    }
+}
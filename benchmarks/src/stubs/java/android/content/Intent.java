@@ -0,0 +1,35 @@
+package android.content;
+
+import java.util.HashMap;
+
+public class Intent {
+    public static final int FLAG_ACTIVITY_SINGLE_TOP = 0x20000000;
+
+    private final HashMap<String, String> extras = new HashMap<String, String>();
+    private String action;
+
+    public Intent(Context packageContext, Class<?> cls){
+    }
+
+    public Intent setAction(String action){
+        this.action = action;
+        return this;
+    }
+
+    public String getAction(){
+        return action;
+    }
+
+    public Intent setFlags(int flags){
+        return this;
+    }
+
+    public Intent putExtra(String name, String value){
+        extras.put(name, value);
+        return this;
+    }
+
+    public String getStringExtra(String name){
+        return extras.get(name);
+    }
+}
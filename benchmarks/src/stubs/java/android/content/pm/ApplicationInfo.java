@@ -0,0 +1,8 @@
+package android.content.pm;
+
+import android.os.Bundle;
+
+public class ApplicationInfo {
+    public Bundle metaData = new Bundle();
+    public int icon;
+}
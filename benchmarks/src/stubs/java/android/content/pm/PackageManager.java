@@ -0,0 +1,20 @@
+package android.content.pm;
+
+import android.content.Intent;
+
+public class PackageManager {
+    public static final int PERMISSION_GRANTED = 0;
+    public static final int PERMISSION_DENIED = -1;
+    public static final int GET_META_DATA = 128;
+
+    public ApplicationInfo getApplicationInfo(String packageName, int flags) throws NameNotFoundException{
+        return new ApplicationInfo();
+    }
+
+    public Intent getLaunchIntentForPackage(String packageName){
+        return null;
+    }
+
+    public static class NameNotFoundException extends Exception {
+    }
+}
@@ -0,0 +1,22 @@
+package android.database.sqlite;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+public abstract class SQLiteDatabase {
+    public abstract void execSQL(String sql);
+
+    public abstract void beginTransaction();
+
+    public abstract void setTransactionSuccessful();
+
+    public abstract void endTransaction();
+
+    public abstract long insert(String table, String nullColumnHack, ContentValues values);
+
+    public abstract int delete(String table, String whereClause, String[] whereArgs);
+
+    public abstract Cursor rawQuery(String sql, String[] selectionArgs);
+
+    public abstract SQLiteStatement compileStatement(String sql);
+}
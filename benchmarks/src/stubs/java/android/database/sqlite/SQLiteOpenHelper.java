@@ -0,0 +1,27 @@
+package android.database.sqlite;
+
+import android.content.Context;
+
+/**
+ * Desktop stand-in for the Android SQLiteOpenHelper. There is no SQLite on the desktop JVM,
+ * so opening the database fails.
+ */
+public abstract class SQLiteOpenHelper {
+    public SQLiteOpenHelper(Context context, String name, Object factory, int version){
+    }
+
+    public abstract void onCreate(SQLiteDatabase db);
+
+    public abstract void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion);
+
+    public SQLiteDatabase getWritableDatabase(){
+        throw new UnsupportedOperationException("SQLite is not available on the desktop JVM");
+    }
+
+    public SQLiteDatabase getReadableDatabase(){
+        throw new UnsupportedOperationException("SQLite is not available on the desktop JVM");
+    }
+
+    public void close(){
+    }
+}
@@ -0,0 +1,17 @@
+package android.database.sqlite;
+
+public abstract class SQLiteStatement {
+    public abstract void bindNull(int index);
+
+    public abstract void bindLong(int index, long value);
+
+    public abstract void bindDouble(int index, double value);
+
+    public abstract void bindString(int index, String value);
+
+    public abstract void clearBindings();
+
+    public abstract long executeInsert();
+
+    public abstract void close();
+}
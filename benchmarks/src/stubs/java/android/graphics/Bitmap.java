@@ -0,0 +1,28 @@
+package android.graphics;
+
+import java.io.OutputStream;
+
+/**
+ * Desktop stand-in for the Android Bitmap. Images cannot be decoded on the desktop JVM.
+ */
+public abstract class Bitmap {
+    public enum CompressFormat { JPEG, PNG, WEBP }
+
+    public enum Config { ARGB_8888, RGB_565 }
+
+    public abstract int getWidth();
+
+    public abstract int getHeight();
+
+    public abstract int getByteCount();
+
+    public abstract boolean hasAlpha();
+
+    public abstract boolean compress(CompressFormat format, int quality, OutputStream stream);
+
+    public abstract void recycle();
+
+    public static Bitmap createScaledBitmap(Bitmap src, int dstWidth, int dstHeight, boolean filter){
+        throw new UnsupportedOperationException("Bitmaps are not available on the desktop JVM");
+    }
+}
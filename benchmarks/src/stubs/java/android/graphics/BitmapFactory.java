@@ -0,0 +1,15 @@
+package android.graphics;
+
+public class BitmapFactory {
+    public static class Options {
+        public boolean inJustDecodeBounds;
+        public int inSampleSize;
+        public Bitmap.Config inPreferredConfig;
+        public int outWidth = -1;
+        public int outHeight = -1;
+    }
+
+    public static Bitmap decodeFile(String pathName, Options opts){
+        return null;
+    }
+}
@@ -0,0 +1,50 @@
+package android.location;
+
+public class Location {
+    private static final double EARTH_RADIUS_METERS = 6371008.8;
+
+    private float speed;
+    private boolean hasSpeed;
+    private float bearing;
+    private boolean hasBearing;
+
+    public float getSpeed(){
+        return speed;
+    }
+
+    public void setSpeed(float speed){
+        this.speed = speed;
+        hasSpeed = true;
+    }
+
+    public boolean hasSpeed(){
+        return hasSpeed;
+    }
+
+    public float getBearing(){
+        return bearing;
+    }
+
+    public void setBearing(float bearing){
+        this.bearing = bearing;
+        hasBearing = true;
+    }
+
+    public boolean hasBearing(){
+        return hasBearing;
+    }
+
+    /**
+     * Great circle distance; Android uses the WGS84 ellipsoid, which differs by well under a
+     * percent at indoor distances.
+     */
+    public static void distanceBetween(double startLatitude, double startLongitude,
+                                       double endLatitude, double endLongitude, float[] results){
+        double dLatitude = Math.toRadians(endLatitude - startLatitude);
+        double dLongitude = Math.toRadians(endLongitude - startLongitude);
+        double a = Math.sin(dLatitude / 2) * Math.sin(dLatitude / 2)
+                + Math.cos(Math.toRadians(startLatitude)) * Math.cos(Math.toRadians(endLatitude))
+                * Math.sin(dLongitude / 2) * Math.sin(dLongitude / 2);
+        results[0] = (float) (2 * EARTH_RADIUS_METERS * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a)));
+    }
+}
@@ -0,0 +1,28 @@
+package android.net;
+
+import java.io.File;
+
+public class Uri {
+    private final String uri;
+
+    private Uri(String uri){
+        this.uri = uri;
+    }
+
+    public static Uri fromFile(File file){
+        return new Uri(file.toURI().toString());
+    }
+
+    public static Uri parse(String uriString){
+        return new Uri(uriString);
+    }
+
+    public String getPath(){
+        return java.net.URI.create(uri).getPath();
+    }
+
+    @Override
+    public String toString(){
+        return uri;
+    }
+}
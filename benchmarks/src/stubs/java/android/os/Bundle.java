@@ -0,0 +1,28 @@
+package android.os;
+
+import java.util.HashMap;
+
+public class Bundle {
+    private final HashMap<String, Object> values;
+
+    public Bundle(){
+        values = new HashMap<String, Object>();
+    }
+
+    public Bundle(int capacity){
+        values = new HashMap<String, Object>(capacity);
+    }
+
+    public void putString(String key, String value){
+        values.put(key, value);
+    }
+
+    public String getString(String key){
+        Object value = values.get(key);
+        return value instanceof String ? (String) value : null;
+    }
+
+    public boolean containsKey(String key){
+        return values.containsKey(key);
+    }
+}
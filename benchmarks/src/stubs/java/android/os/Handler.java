@@ -0,0 +1,47 @@
+package android.os;
+
+/**
+ * Desktop stand-in for the Android Handler, posting to a desktop Looper.
+ */
+public class Handler {
+    private final Looper looper;
+
+    public Handler(){
+        this(Looper.myLooper());
+    }
+
+    public Handler(Looper looper){
+        if (looper==null){
+            throw new RuntimeException("Can't create handler without a Looper");
+        }
+        this.looper = looper;
+    }
+
+    public final Looper getLooper(){
+        return looper;
+    }
+
+    public final boolean post(Runnable r){
+        return postAtTime(r, null, SystemClock.uptimeMillis());
+    }
+
+    public final boolean postDelayed(Runnable r, long delayMillis){
+        return postAtTime(r, null, SystemClock.uptimeMillis() + Math.max(0, delayMillis));
+    }
+
+    public final boolean postAtTime(Runnable r, long uptimeMillis){
+        return postAtTime(r, null, uptimeMillis);
+    }
+
+    public final boolean postAtTime(Runnable r, Object token, long uptimeMillis){
+        return looper.queue.enqueue(this, r, token, uptimeMillis);
+    }
+
+    public final void removeCallbacks(Runnable r){
+        looper.queue.remove(this, r, null);
+    }
+
+    public final void removeCallbacksAndMessages(Object token){
+        looper.queue.remove(this, null, token);
+    }
+}
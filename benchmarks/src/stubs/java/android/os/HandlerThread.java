@@ -0,0 +1,64 @@
+package android.os;
+
+/**
+ * Desktop stand-in for the Android HandlerThread. The thread is a daemon, so a thread which a
+ * benchmark or test forgets to quit does not keep the JVM alive.
+ */
+public class HandlerThread extends Thread {
+    private Looper looper;
+
+    public HandlerThread(String name){
+        super(name);
+        setDaemon(true);
+    }
+
+    public HandlerThread(String name, int priority){
+        this(name);
+    }
+
+    @Override
+    public void run(){
+        Looper.prepare();
+        synchronized (this){
+            looper = Looper.myLooper();
+            notifyAll();
+        }
+        Looper.loop();
+    }
+
+    public Looper getLooper(){
+        if (!isAlive()){
+            return null;
+        }
+        synchronized (this){
+            while (isAlive() && looper==null){
+                try{
+                    wait();
+                }
+                catch(InterruptedException ex){
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        }
+        return looper;
+    }
+
+    public boolean quit(){
+        Looper current = getLooper();
+        if (current==null){
+            return false;
+        }
+        current.quit();
+        return true;
+    }
+
+    public boolean quitSafely(){
+        Looper current = getLooper();
+        if (current==null){
+            return false;
+        }
+        current.quitSafely();
+        return true;
+    }
+}
@@ -0,0 +1,89 @@
+package android.os;
+
+/**
+ * Desktop stand-in for the Android Looper. The main looper belongs to the thread which first
+ * asks for it, so a benchmark or test running on one thread sees that thread as the UI thread
+ * and work posted from it to the main looper runs synchronously where the plugin checks for it.
+ * Messages posted to a looper run when its thread calls loop(), or idle() for a main looper
+ * which is not looping.
+ */
+public final class Looper {
+    private static final ThreadLocal<Looper> sThreadLocal = new ThreadLocal<Looper>();
+    private static Looper sMainLooper;
+
+    final MessageQueue queue = new MessageQueue();
+    private final Thread thread;
+
+    private Looper(){
+        thread = Thread.currentThread();
+    }
+
+    public static void prepare(){
+        if (sThreadLocal.get()!=null){
+            throw new RuntimeException("Only one Looper may be created per thread");
+        }
+        sThreadLocal.set(new Looper());
+    }
+
+    public static synchronized Looper getMainLooper(){
+        if (sMainLooper==null){
+            if (sThreadLocal.get()==null){
+                prepare();
+            }
+            sMainLooper = sThreadLocal.get();
+        }
+        return sMainLooper;
+    }
+
+    public static Looper myLooper(){
+        return sThreadLocal.get();
+    }
+
+    /**
+     * Runs the messages of the calling thread's looper until it quits.
+     */
+    public static void loop(){
+        Looper looper = myLooper();
+        Message message;
+        if (looper==null){
+            throw new RuntimeException("No Looper; Looper.prepare() wasn't called on this thread.");
+        }
+        while ((message = looper.queue.next()) != null){
+            message.callback.run();
+        }
+    }
+
+    public Thread getThread(){
+        return thread;
+    }
+
+    public boolean isCurrentThread(){
+        return Thread.currentThread() == thread;
+    }
+
+    public void quit(){
+        queue.quit(false);
+    }
+
+    public void quitSafely(){
+        queue.quit(true);
+    }
+
+    /**
+     * Desktop only: runs the messages which are due, including those they post, on the
+     * calling thread, which must be the looper's thread.
+     * @return the number of messages run
+     */
+    public int idle(){
+        Message message;
+        int count = 0;
+        if (!isCurrentThread()){
+            throw new IllegalStateException("idle() must be called on the looper's thread");
+        }
+        while ((message = queue.poll()) != null){
+            message.callback.run();
+            count++;
+        }
+        return count;
+    }
+}
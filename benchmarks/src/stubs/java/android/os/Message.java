@@ -0,0 +1,28 @@
+package android.os;
+
+/**
+ * A callback posted to a desktop Looper.
+ */
+final class Message implements Comparable<Message> {
+    final Handler handler;
+    final Runnable callback;
+    final Object token;
+    final long when;
+    private final long sequence;
+
+    Message(Handler handler, Runnable callback, Object token, long when, long sequence){
+        this.handler = handler;
+        this.callback = callback;
+        this.token = token;
+        this.when = when;
+        this.sequence = sequence;
+    }
+
+    @Override
+    public int compareTo(Message other){
+        if (when != other.when){
+            return when < other.when ? -1 : 1;
+        }
+        return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+    }
+}
@@ -0,0 +1,93 @@
+package android.os;
+
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+/**
+ * Time ordered queue of a desktop Looper.
+ */
+final class MessageQueue {
+    private final PriorityQueue<Message> messages = new PriorityQueue<Message>();
+    private long sequence = 0;
+    private boolean quitting = false;
+
+    synchronized boolean enqueue(Handler handler, Runnable callback, Object token, long when){
+        if (quitting){
+            return false;
+        }
+        messages.add(new Message(handler, callback, token, when, sequence++));
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Removes the messages of a handler. A null callback or token matches any.
+     */
+    synchronized void remove(Handler handler, Runnable callback, Object token){
+        Iterator<Message> iterator = messages.iterator();
+        while (iterator.hasNext()){
+            Message message = iterator.next();
+            if (message.handler == handler
+                    && (callback==null || message.callback == callback)
+                    && (token==null || message.token == token)){
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the next message, waiting until it is due, or null once the queue has quit.
+     */
+    synchronized Message next(){
+        while (true){
+            Message head = messages.peek();
+            long now = SystemClock.uptimeMillis();
+            if (head!=null && head.when <= now){
+                return messages.poll();
+            }
+            if (quitting){
+                return null;
+            }
+            try{
+                if (head==null){
+                    wait();
+                }
+                else{
+                    wait(head.when - now);
+                }
+            }
+            catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Returns the next message if it is due, otherwise null.
+     */
+    synchronized Message poll(){
+        Message head = messages.peek();
+        if (head!=null && head.when <= SystemClock.uptimeMillis()){
+            return messages.poll();
+        }
+        return null;
+    }
+
+    synchronized void quit(boolean safely){
+        quitting = true;
+        if (safely){
+            long now = SystemClock.uptimeMillis();
+            Iterator<Message> iterator = messages.iterator();
+            while (iterator.hasNext()){
+                if (iterator.next().when > now){
+                    iterator.remove();
+                }
+            }
+        }
+        else{
+            messages.clear();
+        }
+        notifyAll();
+    }
+}
@@ -0,0 +1,17 @@
+package android.util;
+
+public class Base64 {
+    public static final int DEFAULT = 0;
+    public static final int NO_WRAP = 2;
+
+    public static String encodeToString(byte[] input, int flags){
+        if ((flags & NO_WRAP) != 0){
+            return java.util.Base64.getEncoder().encodeToString(input);
+        }
+        return java.util.Base64.getMimeEncoder().encodeToString(input) + "\n";
+    }
+
+    public static byte[] decode(String str, int flags){
+        return java.util.Base64.getMimeDecoder().decode(str);
+    }
+}
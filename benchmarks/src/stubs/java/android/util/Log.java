@@ -0,0 +1,34 @@
+package android.util;
+
+/**
+ * Desktop stand-in for the Android Log. Messages are dropped, so that logging on the fix path
+ * does not dominate benchmark numbers with console output.
+ */
+public final class Log {
+    private Log(){
+    }
+
+    public static int d(String tag, String msg){
+        return 0;
+    }
+
+    public static int i(String tag, String msg){
+        return 0;
+    }
+
+    public static int w(String tag, String msg){
+        return 0;
+    }
+
+    public static int w(String tag, String msg, Throwable tr){
+        return 0;
+    }
+
+    public static int e(String tag, String msg){
+        return 0;
+    }
+
+    public static int e(String tag, String msg, Throwable tr){
+        return 0;
+    }
+}
@@ -0,0 +1,110 @@
+package android.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Desktop stand-in for the Android LruCache.
+ */
+public class LruCache<K, V> {
+    private final LinkedHashMap<K, V> map = new LinkedHashMap<K, V>(0, 0.75f, true);
+    private final int maxSize;
+    private int size;
+    private int hitCount;
+    private int missCount;
+
+    public LruCache(int maxSize){
+        if (maxSize <= 0){
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        this.maxSize = maxSize;
+    }
+
+    public final V get(K key){
+        synchronized (this){
+            V value = map.get(key);
+            if (value!=null){
+                hitCount++;
+            }
+            else{
+                missCount++;
+            }
+            return value;
+        }
+    }
+
+    public final V put(K key, V value){
+        V previous;
+        synchronized (this){
+            size += sizeOf(key, value);
+            previous = map.put(key, value);
+            if (previous!=null){
+                size -= sizeOf(key, previous);
+            }
+        }
+        if (previous!=null){
+            entryRemoved(false, key, previous, value);
+        }
+        trimToSize(maxSize);
+        return previous;
+    }
+
+    public final V remove(K key){
+        V previous;
+        synchronized (this){
+            previous = map.remove(key);
+            if (previous!=null){
+                size -= sizeOf(key, previous);
+            }
+        }
+        if (previous!=null){
+            entryRemoved(false, key, previous, null);
+        }
+        return previous;
+    }
+
+    public void trimToSize(int maxSize){
+        while (true){
+            K key;
+            V value;
+            synchronized (this){
+                if (size <= maxSize || map.isEmpty()){
+                    return;
+                }
+                Map.Entry<K, V> eldest = map.entrySet().iterator().next();
+                key = eldest.getKey();
+                value = eldest.getValue();
+                map.remove(key);
+                size -= sizeOf(key, value);
+            }
+            entryRemoved(true, key, value, null);
+        }
+    }
+
+    public final void evictAll(){
+        trimToSize(-1);
+    }
+
+    protected int sizeOf(K key, V value){
+        return 1;
+    }
+
+    protected void entryRemoved(boolean evicted, K key, V oldValue, V newValue){
+    }
+
+    public final synchronized int size(){
+        return size;
+    }
+
+    public final synchronized int maxSize(){
+        return maxSize;
+    }
+
+    public final synchronized int hitCount(){
+        return hitCount;
+    }
+
+    public final synchronized int missCount(){
+        return missCount;
+    }
+}
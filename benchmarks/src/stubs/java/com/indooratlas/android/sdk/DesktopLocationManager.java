@@ -0,0 +1,138 @@
+package com.indooratlas.android.sdk;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Location manager of the desktop stubs. Tests push fixes and region transitions with deliver
+ * and enter, which reach each listener on the looper it was registered with, and inspect the
+ * session through the request methods. The most recently created manager is kept in latest.
+ */
+public class DesktopLocationManager extends IALocationManager {
+    private static volatile DesktopLocationManager latest;
+
+    private final LinkedHashMap<IALocationListener, Handler> locationListeners = new LinkedHashMap<IALocationListener, Handler>();
+    private final ArrayList<IARegion.Listener> regionListeners = new ArrayList<IARegion.Listener>();
+    private IALocationRequest lastRequest;
+    private int requestCount = 0;
+    private int removeCount = 0;
+    private boolean destroyed = false;
+
+    DesktopLocationManager(){
+        latest = this;
+    }
+
+    public static DesktopLocationManager latest(){
+        return latest;
+    }
+
+    @Override
+    public boolean requestLocationUpdates(IALocationRequest request, IALocationListener listener){
+        return requestLocationUpdates(request, listener, Looper.myLooper());
+    }
+
+    @Override
+    public synchronized boolean requestLocationUpdates(IALocationRequest request, IALocationListener listener, Looper looper){
+        locationListeners.put(listener, looper!=null ? new Handler(looper) : null);
+        lastRequest = request;
+        requestCount++;
+        return true;
+    }
+
+    @Override
+    public synchronized boolean removeLocationUpdates(IALocationListener listener){
+        if (locationListeners.containsKey(listener)){
+            locationListeners.remove(listener);
+            removeCount++;
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean registerRegionListener(IARegion.Listener listener){
+        if (!regionListeners.contains(listener)){
+            regionListeners.add(listener);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean unregisterRegionListener(IARegion.Listener listener){
+        return regionListeners.remove(listener);
+    }
+
+    @Override
+    public void setLocation(IALocation location){
+    }
+
+    @Override
+    public synchronized void destroy(){
+        locationListeners.clear();
+        regionListeners.clear();
+        destroyed = true;
+    }
+
+    public synchronized boolean isUpdating(){
+        return !locationListeners.isEmpty();
+    }
+
+    public synchronized IALocationRequest getLastRequest(){
+        return lastRequest;
+    }
+
+    public synchronized int getRequestCount(){
+        return requestCount;
+    }
+
+    public synchronized int getRemoveCount(){
+        return removeCount;
+    }
+
+    public synchronized boolean isDestroyed(){
+        return destroyed;
+    }
+
+    /**
+     * Delivers a fix to every location listener.
+     */
+    public void deliver(final IALocation location){
+        for (final Map.Entry<IALocationListener, Handler> entry : snapshot().entrySet()){
+            run(entry.getValue(), new Runnable() {
+                @Override
+                public void run() {
+                    entry.getKey().onLocationChanged(location);
+                }
+            });
+        }
+    }
+
+    /**
+     * Reports entering a region to every region listener on the calling thread.
+     */
+    public void enter(IARegion region){
+        ArrayList<IARegion.Listener> listeners;
+        synchronized (this){
+            listeners = new ArrayList<IARegion.Listener>(regionListeners);
+        }
+        for (IARegion.Listener listener : listeners){
+            listener.onEnterRegion(region);
+        }
+    }
+
+    private synchronized LinkedHashMap<IALocationListener, Handler> snapshot(){
+        return new LinkedHashMap<IALocationListener, Handler>(locationListeners);
+    }
+
+    private static void run(Handler handler, Runnable callback){
+        if (handler==null || handler.getLooper().isCurrentThread()){
+            callback.run();
+        }
+        else{
+            handler.post(callback);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.indooratlas.android.sdk;
+
+import android.location.Location;
+
+/**
+ * Desktop stand-in for the IndoorAtlas fix, built with IALocation.Builder.
+ */
+public class IALocation {
+    private final double latitude;
+    private final double longitude;
+    private final double altitude;
+    private final float accuracy;
+    private final float bearing;
+    private final int floorLevel;
+    private final boolean hasFloorLevel;
+    private final float floorCertainty;
+    private final IARegion region;
+    private final long time;
+
+    private IALocation(Builder builder){
+        latitude = builder.latitude;
+        longitude = builder.longitude;
+        altitude = builder.altitude;
+        accuracy = builder.accuracy;
+        bearing = builder.bearing;
+        floorLevel = builder.floorLevel;
+        hasFloorLevel = builder.hasFloorLevel;
+        floorCertainty = builder.floorCertainty;
+        region = builder.region;
+        time = builder.time;
+    }
+
+    public double getLatitude(){
+        return latitude;
+    }
+
+    public double getLongitude(){
+        return longitude;
+    }
+
+    public double getAltitude(){
+        return altitude;
+    }
+
+    public float getAccuracy(){
+        return accuracy;
+    }
+
+    public float getBearing(){
+        return bearing;
+    }
+
+    public int getFloorLevel(){
+        return floorLevel;
+    }
+
+    public boolean hasFloorLevel(){
+        return hasFloorLevel;
+    }
+
+    public float getFloorCertainty(){
+        return floorCertainty;
+    }
+
+    public IARegion getRegion(){
+        return region;
+    }
+
+    public long getTime(){
+        return time;
+    }
+
+    public Location toLocation(){
+        Location location = new Location();
+        location.setBearing(bearing);
+        return location;
+    }
+
+    public static class Builder {
+        private double latitude;
+        private double longitude;
+        private double altitude;
+        private float accuracy;
+        private float bearing;
+        private int floorLevel;
+        private boolean hasFloorLevel;
+        private float floorCertainty = 1;
+        private IARegion region;
+        private long time = System.currentTimeMillis();
+
+        public Builder withLatitude(double latitude){
+            this.latitude = latitude;
+            return this;
+        }
+
+        public Builder withLongitude(double longitude){
+            this.longitude = longitude;
+            return this;
+        }
+
+        public Builder withAltitude(double altitude){
+            this.altitude = altitude;
+            return this;
+        }
+
+        public Builder withAccuracy(float accuracy){
+            this.accuracy = accuracy;
+            return this;
+        }
+
+        public Builder withBearing(float bearing){
+            this.bearing = bearing;
+            return this;
+        }
+
+        public Builder withFloorLevel(int floorLevel){
+            this.floorLevel = floorLevel;
+            hasFloorLevel = true;
+            return this;
+        }
+
+        public Builder withFloorCertainty(float floorCertainty){
+            this.floorCertainty = floorCertainty;
+            return this;
+        }
+
+        public Builder withRegion(IARegion region){
+            this.region = region;
+            return this;
+        }
+
+        public Builder withTime(long time){
+            this.time = time;
+            return this;
+        }
+
+        public IALocation build(){
+            return new IALocation(this);
+        }
+    }
+}
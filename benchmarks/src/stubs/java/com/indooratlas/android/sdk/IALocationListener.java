@@ -0,0 +1,9 @@
+package com.indooratlas.android.sdk;
+
+import android.os.Bundle;
+
+public interface IALocationListener {
+    void onLocationChanged(IALocation location);
+
+    void onStatusChanged(String provider, int status, Bundle extras);
+}
@@ -0,0 +1,36 @@
+package com.indooratlas.android.sdk;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Looper;
+
+/**
+ * Desktop stand-in for the IndoorAtlas location manager. create returns a
+ * DesktopLocationManager, which positions nothing by itself and delivers the fixes it is given.
+ */
+public abstract class IALocationManager {
+    public static final String EXTRA_API_KEY = "com.indooratlas.android.sdk.intent.extras.apiKey";
+    public static final String EXTRA_API_SECRET = "com.indooratlas.android.sdk.intent.extras.apiSecret";
+    public static final int STATUS_OUT_OF_SERVICE = 0;
+    public static final int STATUS_TEMPORARILY_UNAVAILABLE = 1;
+    public static final int STATUS_AVAILABLE = 2;
+    public static final int STATUS_LIMITED = 10;
+
+    public static IALocationManager create(Context context, Bundle extras){
+        return new DesktopLocationManager();
+    }
+
+    public abstract boolean requestLocationUpdates(IALocationRequest request, IALocationListener listener);
+
+    public abstract boolean requestLocationUpdates(IALocationRequest request, IALocationListener listener, Looper looper);
+
+    public abstract boolean removeLocationUpdates(IALocationListener listener);
+
+    public abstract boolean registerRegionListener(IARegion.Listener listener);
+
+    public abstract boolean unregisterRegionListener(IARegion.Listener listener);
+
+    public abstract void setLocation(IALocation location);
+
+    public abstract void destroy();
+}
@@ -0,0 +1,28 @@
+package com.indooratlas.android.sdk;
+
+public class IALocationRequest {
+    private long fastestInterval = 1000;
+    private float smallestDisplacement = 0;
+
+    public static IALocationRequest create(){
+        return new IALocationRequest();
+    }
+
+    public IALocationRequest setFastestInterval(long fastestInterval){
+        this.fastestInterval = fastestInterval;
+        return this;
+    }
+
+    public long getFastestInterval(){
+        return fastestInterval;
+    }
+
+    public IALocationRequest setSmallestDisplacement(float smallestDisplacement){
+        this.smallestDisplacement = smallestDisplacement;
+        return this;
+    }
+
+    public float getSmallestDisplacement(){
+        return smallestDisplacement;
+    }
+}
@@ -0,0 +1,49 @@
+package com.indooratlas.android.sdk;
+
+public class IARegion {
+    public static final int TYPE_UNKNOWN = -1;
+    public static final int TYPE_FLOOR_PLAN = 1;
+    public static final int TYPE_VENUE = 2;
+
+    private final String id;
+    private final int type;
+    private final String name;
+    private final long timestamp;
+
+    public IARegion(String id, int type, String name, long timestamp){
+        this.id = id;
+        this.type = type;
+        this.name = name;
+        this.timestamp = timestamp;
+    }
+
+    public static IARegion floorPlan(String id){
+        return new IARegion(id, TYPE_FLOOR_PLAN, null, System.currentTimeMillis());
+    }
+
+    public static IARegion venue(String id){
+        return new IARegion(id, TYPE_VENUE, null, System.currentTimeMillis());
+    }
+
+    public String getId(){
+        return id;
+    }
+
+    public int getType(){
+        return type;
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    public long getTimestamp(){
+        return timestamp;
+    }
+
+    public interface Listener {
+        void onEnterRegion(IARegion region);
+
+        void onExitRegion(IARegion region);
+    }
+}
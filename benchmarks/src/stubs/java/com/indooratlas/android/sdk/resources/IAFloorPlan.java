@@ -0,0 +1,67 @@
+package com.indooratlas.android.sdk.resources;
+
+/**
+ * Desktop stand-in for the IndoorAtlas floor plan. Benchmarks and tests override the getters
+ * they need.
+ */
+public class IAFloorPlan {
+    public String getId(){
+        return null;
+    }
+
+    public String getName(){
+        return null;
+    }
+
+    public String getUrl(){
+        return null;
+    }
+
+    public int getFloorLevel(){
+        return 0;
+    }
+
+    public float getBearing(){
+        return 0;
+    }
+
+    public int getBitmapWidth(){
+        return 0;
+    }
+
+    public int getBitmapHeight(){
+        return 0;
+    }
+
+    public float getWidthMeters(){
+        return 0;
+    }
+
+    public float getHeightMeters(){
+        return 0;
+    }
+
+    public float getMetersToPixels(){
+        return 0;
+    }
+
+    public float getPixelsToMeters(){
+        return 0;
+    }
+
+    public IALatLng getBottomLeft(){
+        return null;
+    }
+
+    public IALatLng getCenter(){
+        return null;
+    }
+
+    public IALatLng getTopLeft(){
+        return null;
+    }
+
+    public IALatLng getTopRight(){
+        return null;
+    }
+}
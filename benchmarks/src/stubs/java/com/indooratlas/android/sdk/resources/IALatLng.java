@@ -0,0 +1,11 @@
+package com.indooratlas.android.sdk.resources;
+
+public class IALatLng {
+    public final double latitude;
+    public final double longitude;
+
+    public IALatLng(double latitude, double longitude){
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+}
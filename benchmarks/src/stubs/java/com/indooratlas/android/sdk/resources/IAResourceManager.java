@@ -0,0 +1,43 @@
+package com.indooratlas.android.sdk.resources;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Looper;
+
+/**
+ * Desktop stand-in for the IndoorAtlas resource manager. The manager returned by create has no
+ * network access, so its fetches never complete; tests pass their own subclass to the fetcher.
+ */
+public abstract class IAResourceManager {
+    public static IAResourceManager create(Context context, Bundle extras){
+        return new IAResourceManager() {
+            @Override
+            public IATask<IAFloorPlan> fetchFloorPlanWithId(String floorPlanId){
+                return new IATask<IAFloorPlan>() {
+                    private boolean cancelled = false;
+
+                    @Override
+                    public void setCallback(IAResultCallback<IAFloorPlan> callback, Looper looper){
+                    }
+
+                    @Override
+                    public void cancel(){
+                        cancelled = true;
+                    }
+
+                    @Override
+                    public boolean isCancelled(){
+                        return cancelled;
+                    }
+
+                    @Override
+                    public IAResult<IAFloorPlan> getResult(){
+                        return null;
+                    }
+                };
+            }
+        };
+    }
+
+    public abstract IATask<IAFloorPlan> fetchFloorPlanWithId(String floorPlanId);
+}
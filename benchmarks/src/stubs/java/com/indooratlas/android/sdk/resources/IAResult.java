@@ -0,0 +1,23 @@
+package com.indooratlas.android.sdk.resources;
+
+public class IAResult<R> {
+    private final R result;
+    private final Throwable error;
+
+    public IAResult(R result, Throwable error){
+        this.result = result;
+        this.error = error;
+    }
+
+    public R getResult(){
+        return result;
+    }
+
+    public boolean isSuccess(){
+        return error==null;
+    }
+
+    public Throwable getError(){
+        return error;
+    }
+}
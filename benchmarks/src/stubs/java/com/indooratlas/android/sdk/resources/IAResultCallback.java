@@ -0,0 +1,5 @@
+package com.indooratlas.android.sdk.resources;
+
+public interface IAResultCallback<R> {
+    void onResult(IAResult<R> result);
+}
@@ -0,0 +1,13 @@
+package com.indooratlas.android.sdk.resources;
+
+import android.os.Looper;
+
+public interface IATask<R> {
+    void setCallback(IAResultCallback<R> callback, Looper looper);
+
+    void cancel();
+
+    boolean isCancelled();
+
+    IAResult<R> getResult();
+}
@@ -0,0 +1,75 @@
+package org.apache.cordova;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Desktop stand-in for the Cordova CallbackContext. Results go to the web view, if any, and a
+ * result without keepCallback finishes the callback as in Cordova.
+ */
+public class CallbackContext {
+    private final String callbackId;
+    private final CordovaWebView webView;
+    private boolean finished;
+
+    public CallbackContext(String callbackId, CordovaWebView webView){
+        this.callbackId = callbackId;
+        this.webView = webView;
+    }
+
+    public boolean isFinished(){
+        return finished;
+    }
+
+    public String getCallbackId(){
+        return callbackId;
+    }
+
+    public void sendPluginResult(PluginResult pluginResult){
+        synchronized (this){
+            if (finished){
+                return;
+            }
+            finished = !pluginResult.getKeepCallback();
+        }
+        if (webView!=null){
+            webView.sendPluginResult(pluginResult, callbackId);
+        }
+    }
+
+    public void success(JSONObject message){
+        sendPluginResult(new PluginResult(PluginResult.Status.OK, message));
+    }
+
+    public void success(String message){
+        sendPluginResult(new PluginResult(PluginResult.Status.OK, message));
+    }
+
+    public void success(JSONArray message){
+        sendPluginResult(new PluginResult(PluginResult.Status.OK, message));
+    }
+
+    public void success(byte[] message){
+        sendPluginResult(new PluginResult(PluginResult.Status.OK, message));
+    }
+
+    public void success(int message){
+        sendPluginResult(new PluginResult(PluginResult.Status.OK, message));
+    }
+
+    public void success(){
+        sendPluginResult(new PluginResult(PluginResult.Status.OK));
+    }
+
+    public void error(JSONObject message){
+        sendPluginResult(new PluginResult(PluginResult.Status.ERROR, message));
+    }
+
+    public void error(String message){
+        sendPluginResult(new PluginResult(PluginResult.Status.ERROR, message));
+    }
+
+    public void error(int message){
+        sendPluginResult(new PluginResult(PluginResult.Status.ERROR, message));
+    }
+}
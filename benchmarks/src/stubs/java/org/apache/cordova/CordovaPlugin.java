@@ -0,0 +1,59 @@
+package org.apache.cordova;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+/**
+ * Desktop stand-in for the Cordova plugin base class.
+ */
+public class CordovaPlugin {
+    public CordovaWebView webView;
+    public CordovaInterface cordova;
+    protected CordovaPreferences preferences;
+
+    public final void privateInitialize(CordovaInterface cordova, CordovaWebView webView, CordovaPreferences preferences){
+        this.cordova = cordova;
+        this.webView = webView;
+        this.preferences = preferences;
+        initialize(cordova, webView);
+        pluginInitialize();
+    }
+
+    public void initialize(CordovaInterface cordova, CordovaWebView webView){
+    }
+
+    protected void pluginInitialize(){
+    }
+
+    public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException{
+        return false;
+    }
+
+    public void onPause(boolean multitasking){
+    }
+
+    public void onResume(boolean multitasking){
+    }
+
+    public void onStart(){
+    }
+
+    public void onStop(){
+    }
+
+    public void onDestroy(){
+    }
+
+    public void onReset(){
+    }
+
+    public boolean hasPermisssion(){
+        return true;
+    }
+
+    public void requestPermissions(int requestCode){
+    }
+
+    public void onRequestPermissionResult(int requestCode, String[] permissions, int[] grantResults) throws JSONException{
+    }
+}
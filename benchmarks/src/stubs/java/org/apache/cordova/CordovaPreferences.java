@@ -0,0 +1,35 @@
+package org.apache.cordova;
+
+import java.util.HashMap;
+import java.util.Locale;
+
+public class CordovaPreferences {
+    private final HashMap<String, String> prefs = new HashMap<String, String>(20);
+
+    public void set(String name, String value){
+        prefs.put(name.toLowerCase(Locale.ENGLISH), value);
+    }
+
+    public void set(String name, int value){
+        set(name, "" + value);
+    }
+
+    public void set(String name, boolean value){
+        set(name, "" + value);
+    }
+
+    public boolean getBoolean(String name, boolean defaultValue){
+        String value = prefs.get(name.toLowerCase(Locale.ENGLISH));
+        return value!=null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+
+    public int getInteger(String name, int defaultValue){
+        String value = prefs.get(name.toLowerCase(Locale.ENGLISH));
+        return value!=null ? (int) Long.decode(value).longValue() : defaultValue;
+    }
+
+    public String getString(String name, String defaultValue){
+        String value = prefs.get(name.toLowerCase(Locale.ENGLISH));
+        return value!=null ? value : defaultValue;
+    }
+}
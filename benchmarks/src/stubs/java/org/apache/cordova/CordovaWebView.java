@@ -0,0 +1,7 @@
+package org.apache.cordova;
+
+public interface CordovaWebView {
+    CordovaPreferences getPreferences();
+
+    void sendPluginResult(PluginResult cr, String callbackId);
+}
@@ -0,0 +1,270 @@
+package com.ialocation.plugin;
+
+import android.os.Looper;
+
+import com.indooratlas.android.sdk.resources.IAFloorPlan;
+import com.indooratlas.android.sdk.resources.IALatLng;
+import com.indooratlas.android.sdk.resources.IAResourceManager;
+import com.indooratlas.android.sdk.resources.IAResult;
+import com.indooratlas.android.sdk.resources.IAResultCallback;
+import com.indooratlas.android.sdk.resources.IATask;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Cache hits, misses and superseded latest wins requests of FloorPlanFetcher. Disk work is
+ * queued on a test executor which the test runs by hand, so a test can check that nothing
+ * touched the disk on the calling thread.
+ */
+public class FloorPlanFetcherTest {
+    private static final String FLOOR_PLAN_ID = "7f3c1f0e-6b1a-4c2e-9a57-2d1c4f1b9e21";
+    private static final String OTHER_FLOOR_PLAN_ID = "0b9e5d2a-3c4f-4e6a-8d1b-7a2c9f0e5b13";
+
+    private final ArrayDeque<Runnable> diskQueue = new ArrayDeque<Runnable>();
+    private final Executor diskExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command){
+            diskQueue.add(command);
+        }
+    };
+    private final TestResourceManager resourceManager = new TestResourceManager();
+    private final PluginMetrics metrics = new PluginMetrics();
+    private File directory;
+    private FloorPlanFetcher fetcher;
+
+    @Before
+    public void setUp() throws IOException{
+        directory = Files.createTempDirectory("floorplans").toFile();
+        fetcher = new FloorPlanFetcher(resourceManager, new FloorPlanCache(directory), diskExecutor, metrics);
+    }
+
+    @After
+    public void tearDown(){
+        File[] files = directory.listFiles();
+        if (files!=null){
+            for (File file : files){
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void missFetchesAndCaches() throws JSONException{
+        RecordingCallback callback = new RecordingCallback();
+        fetcher.fetch(FLOOR_PLAN_ID, null, callback);
+        assertTrue("Fetch started before the disk lookup", resourceManager.tasks.isEmpty());
+        runDiskQueue();
+        assertEquals(1, resourceManager.tasks.size());
+        resourceManager.tasks.get(0).complete(createFloorPlan(FLOOR_PLAN_ID));
+        assertEquals(PluginResult.Status.OK.ordinal(), callback.getResult().getStatus());
+        assertEquals(FLOOR_PLAN_ID, new JSONObject(callback.getResult().getMessage()).getString("id"));
+        assertEquals(1, metrics.floorPlanCacheMisses.get());
+        assertEquals(0, metrics.floorPlanCacheHits.get());
+        runDiskQueue();
+        assertTrue(new File(directory, FLOOR_PLAN_ID + ".json").isFile());
+    }
+
+    @Test
+    public void memoryHitDoesNoDiskWork(){
+        fetchAndComplete(FLOOR_PLAN_ID);
+        RecordingCallback callback = new RecordingCallback();
+        fetcher.fetch(FLOOR_PLAN_ID, null, callback);
+        assertTrue(diskQueue.isEmpty());
+        assertEquals(PluginResult.Status.OK.ordinal(), callback.getResult().getStatus());
+        assertEquals(1, resourceManager.tasks.size());
+        assertEquals(1, metrics.floorPlanCacheHits.get());
+    }
+
+    @Test
+    public void diskHitAfterRestart(){
+        fetchAndComplete(FLOOR_PLAN_ID);
+        fetcher = new FloorPlanFetcher(resourceManager, new FloorPlanCache(directory), diskExecutor, metrics);
+        RecordingCallback callback = new RecordingCallback();
+        fetcher.fetch(FLOOR_PLAN_ID, null, callback);
+        assertNull("Disk read on the calling thread", callback.getResult());
+        runDiskQueue();
+        assertEquals(PluginResult.Status.OK.ordinal(), callback.getResult().getStatus());
+        assertEquals(1, resourceManager.tasks.size());
+        assertEquals(1, metrics.floorPlanCacheHits.get());
+    }
+
+    @Test
+    public void failedFetchFallsBackToStaleCopyOnDiskExecutor() throws JSONException{
+        fetchAndComplete(FLOOR_PLAN_ID);
+        RecordingCallback callback = new RecordingCallback();
+        fetcher.fetch(FLOOR_PLAN_ID, new JSONObject().put("maxAge", -1), callback);
+        assertEquals(2, resourceManager.tasks.size());
+        resourceManager.tasks.get(1).complete(null);
+        assertNull("Fallback read on the task looper", callback.getResult());
+        runDiskQueue();
+        assertEquals(PluginResult.Status.OK.ordinal(), callback.getResult().getStatus());
+        assertEquals(FLOOR_PLAN_ID, new JSONObject(callback.getResult().getMessage()).getString("id"));
+    }
+
+    @Test
+    public void latestWinsSupersedesRunningFetch() throws JSONException{
+        JSONObject latestWins = new JSONObject().put("latestWins", true);
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        fetcher.fetch(FLOOR_PLAN_ID, latestWins, first);
+        runDiskQueue();
+        fetcher.fetch(OTHER_FLOOR_PLAN_ID, latestWins, second);
+        assertEquals(PluginResult.Status.NO_RESULT.ordinal(), first.getResult().getStatus());
+        assertTrue(resourceManager.tasks.get(0).isCancelled());
+        runDiskQueue();
+        assertEquals(2, resourceManager.tasks.size());
+        resourceManager.tasks.get(1).complete(createFloorPlan(OTHER_FLOOR_PLAN_ID));
+        assertEquals(PluginResult.Status.OK.ordinal(), second.getResult().getStatus());
+        assertEquals(1, first.results.size());
+    }
+
+    @Test
+    public void latestWinsSupersededDuringDiskLookup() throws JSONException{
+        JSONObject latestWins = new JSONObject().put("latestWins", true);
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        fetcher.fetch(FLOOR_PLAN_ID, latestWins, first);
+        fetcher.fetch(OTHER_FLOOR_PLAN_ID, latestWins, second);
+        assertEquals(PluginResult.Status.NO_RESULT.ordinal(), first.getResult().getStatus());
+        runDiskQueue();
+        assertEquals("Superseded request started a fetch", 1, resourceManager.tasks.size());
+        assertEquals(OTHER_FLOOR_PLAN_ID, resourceManager.tasks.get(0).floorPlanId);
+        resourceManager.tasks.get(0).complete(createFloorPlan(OTHER_FLOOR_PLAN_ID));
+        assertEquals(PluginResult.Status.OK.ordinal(), second.getResult().getStatus());
+        assertEquals(1, first.results.size());
+    }
+
+    private void fetchAndComplete(String floorplanId){
+        RecordingCallback callback = new RecordingCallback();
+        fetcher.fetch(floorplanId, null, callback);
+        runDiskQueue();
+        resourceManager.tasks.get(resourceManager.tasks.size() - 1).complete(createFloorPlan(floorplanId));
+        runDiskQueue();
+        assertNotNull(callback.getResult());
+    }
+
+    private void runDiskQueue(){
+        Runnable command;
+        while ((command = diskQueue.poll()) != null){
+            command.run();
+        }
+    }
+
+    private static IAFloorPlan createFloorPlan(final String id){
+        return new IAFloorPlan() {
+            @Override
+            public String getId(){
+                return id;
+            }
+
+            @Override
+            public IALatLng getBottomLeft(){
+                return new IALatLng(60.1690, 24.9350);
+            }
+
+            @Override
+            public IALatLng getCenter(){
+                return new IALatLng(60.1695, 24.9355);
+            }
+
+            @Override
+            public IALatLng getTopLeft(){
+                return new IALatLng(60.1700, 24.9350);
+            }
+
+            @Override
+            public IALatLng getTopRight(){
+                return new IALatLng(60.1700, 24.9360);
+            }
+        };
+    }
+
+    private static class RecordingCallback extends CallbackContext {
+        final ArrayList<PluginResult> results = new ArrayList<PluginResult>();
+
+        RecordingCallback(){
+            super("fetchFloorplan", null);
+        }
+
+        @Override
+        public void sendPluginResult(PluginResult pluginResult){
+            results.add(pluginResult);
+        }
+
+        PluginResult getResult(){
+            return results.isEmpty() ? null : results.get(results.size() - 1);
+        }
+    }
+
+    private static class TestResourceManager extends IAResourceManager {
+        final ArrayList<TestTask> tasks = new ArrayList<TestTask>();
+
+        @Override
+        public IATask<IAFloorPlan> fetchFloorPlanWithId(String floorPlanId){
+            TestTask task = new TestTask(floorPlanId);
+            tasks.add(task);
+            return task;
+        }
+    }
+
+    /**
+     * Fetch task which the test completes. The result is delivered on the calling thread, which
+     * stands in for the task's looper.
+     */
+    private static class TestTask implements IATask<IAFloorPlan> {
+        final String floorPlanId;
+        private IAResultCallback<IAFloorPlan> callback;
+        private IAResult<IAFloorPlan> result;
+        private boolean cancelled = false;
+
+        TestTask(String floorPlanId){
+            this.floorPlanId = floorPlanId;
+        }
+
+        void complete(IAFloorPlan floorPlan){
+            assertFalse("Completing a cancelled task", cancelled);
+            result = new IAResult<IAFloorPlan>(floorPlan, floorPlan==null ? new IOException("Fetch failed") : null);
+            callback.onResult(result);
+        }
+
+        @Override
+        public void setCallback(IAResultCallback<IAFloorPlan> callback, Looper looper){
+            this.callback = callback;
+        }
+
+        @Override
+        public void cancel(){
+            cancelled = true;
+        }
+
+        @Override
+        public boolean isCancelled(){
+            return cancelled;
+        }
+
+        @Override
+        public IAResult<IAFloorPlan> getResult(){
+            return result;
+        }
+    }
+}
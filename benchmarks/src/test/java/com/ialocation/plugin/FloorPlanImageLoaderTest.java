@@ -0,0 +1,216 @@
+package com.ialocation.plugin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Download and cache of FloorPlanImageLoader against a local HTTP stand-in. Bitmaps cannot be
+ * decoded on the desktop JVM, so images are requested at their own size except when testing
+ * a failed decode.
+ */
+public class FloorPlanImageLoaderTest {
+    private static final int IMAGE_BYTES = 1000;
+
+    private final ConcurrentHashMap<String, AtomicInteger> requests = new ConcurrentHashMap<String, AtomicInteger>();
+    private HttpServer server;
+    private File directory;
+    private FloorPlanImageLoader loader;
+
+    @Before
+    public void setUp() throws IOException{
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException{
+                String path = exchange.getRequestURI().getPath();
+                byte[] body = getImage(path);
+                requests.putIfAbsent(path, new AtomicInteger());
+                requests.get(path).incrementAndGet();
+                if (path.startsWith("/missing")){
+                    exchange.sendResponseHeaders(404, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        directory = Files.createTempDirectory("floorplan-images").toFile();
+    }
+
+    @After
+    public void tearDown(){
+        if (loader!=null){
+            loader.shutdown();
+        }
+        server.stop(0);
+        File[] files = directory.listFiles();
+        if (files!=null){
+            for (File file : files){
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void downloadsOnceAndServesFromCache() throws Exception{
+        loader = new FloorPlanImageLoader(directory);
+        Result first = load("a", "/a.png", 0);
+        Result second = load("a", "/a.png", 0);
+        assertNull(first.error);
+        assertEquals(first.uri, second.uri);
+        assertEquals(400, first.width);
+        assertEquals(300, first.height);
+        assertArrayEquals(getImage("/a.png"), Files.readAllBytes(new File(new URI(first.uri)).toPath()));
+        assertEquals(1, requests.get("/a.png").get());
+        assertEquals("Temporary file left behind", 1, directory.listFiles().length);
+    }
+
+    @Test
+    public void failedDownloadLeavesNothing() throws Exception{
+        loader = new FloorPlanImageLoader(directory);
+        Result result = load("a", "/missing.png", 0);
+        assertNotNull(result.error);
+        assertTrue(result.error, result.error.contains("404"));
+        assertEquals(0, directory.listFiles().length);
+        load("a", "/missing.png", 0);
+        assertEquals("Failed download was cached", 2, requests.get("/missing.png").get());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedBySize() throws Exception{
+        loader = new FloorPlanImageLoader(directory, IMAGE_BYTES * 5 / 2);
+        load("a", "/a.png", 0);
+        load("b", "/b.png", 0);
+        load("a", "/a.png", 0);
+        load("c", "/c.png", 0);
+        assertTrue(cached("a", "/a.png"));
+        assertFalse(cached("b", "/b.png"));
+        assertTrue(cached("c", "/c.png"));
+        assertEquals(1, requests.get("/a.png").get());
+    }
+
+    @Test
+    public void indexesImagesOfEarlierRuns() throws Exception{
+        loader = new FloorPlanImageLoader(directory);
+        load("a", "/a.png", 0);
+        load("b", "/b.png", 0);
+        loader.shutdown();
+        getCachedFile("a", "/a.png").setLastModified(System.currentTimeMillis() - 60000);
+        getCachedFile("b", "/b.png").setLastModified(System.currentTimeMillis() - 30000);
+        File leftover = new File(directory, "c_1234.tmp");
+        assertTrue(leftover.createNewFile());
+
+        loader = new FloorPlanImageLoader(directory, IMAGE_BYTES * 5 / 2);
+        load("b", "/b.png", 0);
+        assertEquals("Image of the earlier run downloaded again", 1, requests.get("/b.png").get());
+        assertFalse("Temporary file of the earlier run kept", leftover.exists());
+        load("c", "/c.png", 0);
+        assertFalse("Oldest image of the earlier run kept", cached("a", "/a.png"));
+        assertTrue(cached("b", "/b.png"));
+        assertTrue(cached("c", "/c.png"));
+    }
+
+    @Test
+    public void undecodableImageFails() throws Exception{
+        loader = new FloorPlanImageLoader(directory);
+        Result result = load("a", "/a.png", 100);
+        assertNotNull(result.error);
+        assertTrue(result.error, result.error.contains("Cannot decode"));
+        assertTrue("Original image not cached", cached("a", "/a.png"));
+    }
+
+    @Test
+    public void sampleSize(){
+        assertEquals(1, FloorPlanImageLoader.getSampleSize(1000, 800, 1000));
+        assertEquals(1, FloorPlanImageLoader.getSampleSize(1999, 800, 1000));
+        assertEquals(2, FloorPlanImageLoader.getSampleSize(2000, 800, 1000));
+        assertEquals(4, FloorPlanImageLoader.getSampleSize(3000, 4000, 1000));
+        assertEquals(8, FloorPlanImageLoader.getSampleSize(8192, 8192, 1024));
+    }
+
+    /**
+     * Requests an image of 400 x 300 pixels and waits for the result.
+     */
+    private Result load(String floorplanId, String path, int maxDimension) throws InterruptedException{
+        final LinkedBlockingQueue<Result> results = new LinkedBlockingQueue<Result>();
+        loader.load(floorplanId, getUrl(path), 400, 300, maxDimension, new FloorPlanImageLoader.Callback() {
+            @Override
+            public void onImage(String uri, int width, int height){
+                results.add(new Result(uri, width, height, null));
+            }
+
+            @Override
+            public void onError(String message){
+                results.add(new Result(null, 0, 0, message));
+            }
+        });
+        Result result = results.poll(10, TimeUnit.SECONDS);
+        assertNotNull("No result for " + path, result);
+        return result;
+    }
+
+    private boolean cached(String floorplanId, String path){
+        return getCachedFile(floorplanId, path).isFile();
+    }
+
+    private File getCachedFile(String floorplanId, String path){
+        return new File(directory, floorplanId + "_" + Integer.toHexString(getUrl(path).hashCode()));
+    }
+
+    private String getUrl(String path){
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    /**
+     * Returns IMAGE_BYTES bytes which differ between paths.
+     */
+    private static byte[] getImage(String path){
+        byte[] image = new byte[IMAGE_BYTES];
+        Arrays.fill(image, (byte) path.hashCode());
+        return image;
+    }
+
+    private static class Result {
+        final String uri;
+        final int width;
+        final int height;
+        final String error;
+
+        Result(String uri, int width, int height, String error){
+            this.uri = uri;
+            this.width = width;
+            this.height = height;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.ialocation.plugin;
+
+import android.app.Activity;
+
+import com.indooratlas.android.sdk.IALocation;
+import com.indooratlas.android.sdk.IARegion;
+
+import org.junit.Test;
+
+/**
+ * Lifecycle of PositionHistoryStore. SQLite is not available on the desktop JVM, so only
+ * paths which do not reach the database are covered.
+ */
+public class PositionHistoryStoreTest {
+    @Test
+    public void rowsAfterShutdownAreIgnored(){
+        PositionHistoryStore store = new PositionHistoryStore(new Activity());
+        store.shutdown();
+        // A fix already on its way when the plugin is destroyed must not hit the stopped thread
+        store.addPosition(new IALocation.Builder().withLatitude(60.16952).withLongitude(24.93545).build());
+        store.addRegion(IARegion.floorPlan("7f3c1f0e-6b1a-4c2e-9a57-2d1c4f1b9e21"), IndoorLocationListener.TRANSITION_TYPE_ENTER);
+        store.shutdown();
+    }
+}
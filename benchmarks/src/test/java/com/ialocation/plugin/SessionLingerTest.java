@@ -0,0 +1,204 @@
+package com.ialocation.plugin;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.indooratlas.android.sdk.DesktopLocationManager;
+import com.indooratlas.android.sdk.IALocation;
+import com.indooratlas.android.sdk.IARegion;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaInterface;
+import org.apache.cordova.CordovaPlugin;
+import org.apache.cordova.CordovaPreferences;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Positioning session linger period of IALocationPlugin. The test thread is the UI thread.
+ */
+public class SessionLingerTest {
+    private static final int LINGER_MS = 300;
+    private static final long FIX_INTERVAL_MS = 20;
+
+    private final ExecutorService threadPool = Executors.newSingleThreadExecutor();
+    private Looper mainLooper;
+    private IALocationPlugin plugin;
+    private DesktopLocationManager locationManager;
+
+    @Before
+    public void setUp() throws JSONException{
+        CordovaPreferences preferences = new CordovaPreferences();
+        preferences.set("IndoorAtlasSessionLingerMs", LINGER_MS);
+        mainLooper = Looper.getMainLooper();
+        plugin = new IALocationPlugin();
+        plugin.privateInitialize(new TestCordova(), null, preferences);
+        execute("initializeIndoorAtlas", new JSONArray().put("key").put("secret"));
+        locationManager = DesktopLocationManager.latest();
+    }
+
+    @After
+    public void tearDown(){
+        plugin.onDestroy();
+        mainLooper.idle();
+        threadPool.shutdownNow();
+    }
+
+    @Test
+    public void sessionStopsAfterLingerWhileFixesKeepComing() throws Exception{
+        execute("addWatch", new JSONArray().put("1"));
+        assertTrue(locationManager.isUpdating());
+        execute("clearWatch", new JSONArray().put("1"));
+        long clearTime = SystemClock.uptimeMillis();
+        long deadline = clearTime + LINGER_MS * 5;
+        int fixes = 0;
+        while (locationManager.isUpdating() && SystemClock.uptimeMillis() < deadline){
+            locationManager.deliver(createLocation());
+            fixes++;
+            if (fixes % 5 == 0){
+                // Apps clear the same watch more than once, which must not restart the linger period
+                execute("clearWatch", new JSONArray().put("1"));
+            }
+            mainLooper.idle();
+            Thread.sleep(FIX_INTERVAL_MS);
+        }
+        assertFalse("Session still running " + (SystemClock.uptimeMillis() - clearTime) + " ms after the last clearWatch",
+                locationManager.isUpdating());
+        assertTrue("Session stopped before the linger period", SystemClock.uptimeMillis() - clearTime >= LINGER_MS);
+    }
+
+    @Test
+    public void resubscribingWithinLingerKeepsSession() throws Exception{
+        execute("addWatch", new JSONArray().put("1"));
+        execute("clearWatch", new JSONArray().put("1"));
+        Thread.sleep(LINGER_MS / 3);
+        execute("addWatch", new JSONArray().put("2"));
+        Thread.sleep(LINGER_MS * 2);
+        mainLooper.idle();
+        assertTrue(locationManager.isUpdating());
+        assertEquals(0, locationManager.getRemoveCount());
+    }
+
+    @Test
+    public void resumeWithOnlyBackgroundTrackReleasesSession() throws Exception{
+        execute("startBackgroundService", new JSONArray().put(new JSONObject()));
+        plugin.onPause(false);
+        assertTrue("Background track did not start the session", waitForUpdating(true, LINGER_MS));
+        plugin.onResume(false);
+        long resumeTime = SystemClock.uptimeMillis();
+        long deadline = resumeTime + LINGER_MS * 5;
+        while (locationManager.isUpdating() && SystemClock.uptimeMillis() < deadline){
+            locationManager.deliver(createLocation());
+            mainLooper.idle();
+            Thread.sleep(FIX_INTERVAL_MS);
+        }
+        assertFalse("Session still running " + (SystemClock.uptimeMillis() - resumeTime) + " ms after resume",
+                locationManager.isUpdating());
+        assertTrue("Session stopped before the linger period", SystemClock.uptimeMillis() - resumeTime >= LINGER_MS);
+    }
+
+    @Test
+    public void watchWithoutBackgroundPolicyKeepsPositioningInBackground() throws Exception{
+        execute("addWatch", new JSONArray().put("1"));
+        plugin.onPause(false);
+        Thread.sleep(LINGER_MS * 2);
+        mainLooper.idle();
+        assertTrue(locationManager.isUpdating());
+        assertEquals(0, locationManager.getRemoveCount());
+    }
+
+    @Test
+    public void backgroundingIdleAppIsNotSessionStop() throws Exception{
+        for (int i = 0; i < 3; i++){
+            plugin.onPause(false);
+            plugin.onResume(false);
+        }
+        execute("addWatch", new JSONArray().put("1"));
+        execute("clearWatch", new JSONArray().put("1"));
+        plugin.onPause(false);
+        assertTrue(waitForUpdating(false, LINGER_MS));
+        plugin.onPause(false);
+        plugin.onResume(false);
+        Thread.sleep(LINGER_MS * 2);
+        mainLooper.idle();
+        JSONObject metrics = getMetrics();
+        assertEquals(1, metrics.getLong("sessionStarts"));
+        assertEquals(1, metrics.getLong("sessionStops"));
+    }
+
+    private JSONObject getMetrics() throws JSONException{
+        final JSONObject[] metrics = new JSONObject[1];
+        assertTrue(plugin.execute("getMetrics", new JSONArray(), new CallbackContext("getMetrics", null) {
+            @Override
+            public void sendPluginResult(PluginResult pluginResult){
+                metrics[0] = new JSONObject(pluginResult.getMessage());
+            }
+        }));
+        return metrics[0];
+    }
+
+    /**
+     * Runs the UI thread until the session is in the given state, as the positioning worker
+     * reaches it asynchronously.
+     */
+    private boolean waitForUpdating(boolean updating, long timeoutMs) throws InterruptedException{
+        long deadline = SystemClock.uptimeMillis() + timeoutMs;
+        while (locationManager.isUpdating() != updating && SystemClock.uptimeMillis() < deadline){
+            mainLooper.idle();
+            Thread.sleep(1);
+        }
+        return locationManager.isUpdating() == updating;
+    }
+
+    private void execute(String action, JSONArray args) throws JSONException{
+        assertTrue(plugin.execute(action, args, new CallbackContext(action, null)));
+        mainLooper.idle();
+    }
+
+    private static IALocation createLocation(){
+        return new IALocation.Builder()
+                .withLatitude(60.16952)
+                .withLongitude(24.93545)
+                .withAccuracy(2.5f)
+                .withFloorLevel(3)
+                .withRegion(IARegion.floorPlan("7f3c1f0e-6b1a-4c2e-9a57-2d1c4f1b9e21"))
+                .build();
+    }
+
+    private class TestCordova implements CordovaInterface {
+        private final Activity activity = new Activity();
+
+        @Override
+        public Activity getActivity(){
+            return activity;
+        }
+
+        @Override
+        public Context getContext(){
+            return activity;
+        }
+
+        @Override
+        public ExecutorService getThreadPool(){
+            return threadPool;
+        }
+
+        @Override
+        public void requestPermissions(CordovaPlugin plugin, int requestCode, String[] permissions){
+        }
+    }
+}
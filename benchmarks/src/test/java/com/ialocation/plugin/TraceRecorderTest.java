@@ -0,0 +1,61 @@
+package com.ialocation.plugin;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * File handling of TraceRecorder.
+ */
+public class TraceRecorderTest {
+    private static final int RUNS = 20;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException{
+        directory = Files.createTempDirectory("traces").toFile();
+    }
+
+    @After
+    public void tearDown(){
+        File[] files = directory.listFiles();
+        if (files!=null){
+            for (File file : files){
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Recordings started in the same millisecond each get a file of their own, in creation order.
+     */
+    @Test
+    public void everyRecordingGetsNewFile() throws IOException{
+        TraceRecorder recorder = new TraceRecorder(directory, TraceRecorder.DEFAULT_MAX_FILE_BYTES, RUNS);
+        File previous = null;
+        for (int i = 0; i < RUNS; i++){
+            recorder.start();
+            recorder.stop();
+            List<File> files = TraceRecorder.getTraceFiles(directory);
+            assertEquals(i + 1, files.size());
+            assertTrue("Newest file not sorted last", previous==null || files.indexOf(previous)==i - 1);
+            previous = files.get(i);
+        }
+        for (File file : TraceRecorder.getTraceFiles(directory)){
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            assertEquals("Appended to " + file.getName(), TraceRecorder.HEADER_SIZE, bytes.length);
+            assertArrayEquals(new byte[]{'I', 'A', 'T', 'R'}, new byte[]{bytes[0], bytes[1], bytes[2], bytes[3]});
+        }
+    }
+}
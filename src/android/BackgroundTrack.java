@@ -0,0 +1,105 @@
+package com.ialocation.plugin;
+
+import org.apache.cordova.CallbackContext;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+
+/**
+ * Native subscriber which keeps positioning while the app is in background and collects the
+ * fixes and region transitions of that time into bounded buffers, so the WebView is not woken
+ * per fix. The buffers are delivered to JS as one batch when the app returns to foreground:
+ * {"positions":[...],"regions":[...],"dropped":n}. When a buffer is full its oldest entry is
+ * dropped, so a long absence keeps the most recent track.
+ * Only used on the positioning thread.
+ */
+public class BackgroundTrack {
+    public static final int DEFAULT_BUFFER_SIZE = 1000;
+
+    private final CallbackContext callbackContext;
+    private final int bufferSize;
+    private final LocationRequestSpec requestSpec;
+    private final ArrayDeque<String> positions = new ArrayDeque<String>();
+    private final ArrayDeque<String> regions = new ArrayDeque<String>();
+    private long dropped = 0;
+
+    /**
+     * The constructor
+     * @param callbackContext callback which receives the batches
+     * @param options bufferSize, fastestInterval and smallestDisplacement, may be null
+     */
+    public BackgroundTrack(CallbackContext callbackContext, JSONObject options){
+        this.callbackContext = callbackContext;
+        if (options!=null){
+            bufferSize = Math.max(1, options.optInt("bufferSize", DEFAULT_BUFFER_SIZE));
+            requestSpec = new LocationRequestSpec(options.optLong("fastestInterval", 0),
+                    (float) options.optDouble("smallestDisplacement", 0));
+        }
+        else{
+            bufferSize = DEFAULT_BUFFER_SIZE;
+            requestSpec = LocationRequestSpec.DEFAULT;
+        }
+    }
+
+    public CallbackContext getCallbackContext(){
+        return callbackContext;
+    }
+
+    /**
+     * Returns the location request hints of the track, which apply while the app is in background.
+     * @return
+     */
+    public LocationRequestSpec getRequestSpec(){
+        return requestSpec;
+    }
+
+    public void addPosition(String locationJson){
+        add(positions, locationJson);
+    }
+
+    public void addRegion(String regionJson){
+        add(regions, regionJson);
+    }
+
+    private void add(ArrayDeque<String> buffer, String json){
+        if (buffer.size() >= bufferSize){
+            buffer.removeFirst();
+            dropped++;
+        }
+        buffer.addLast(json);
+    }
+
+    /**
+     * Returns the buffered positions and region transitions as one JSON object and empties
+     * the buffers.
+     * @return the batch, or null if nothing was buffered
+     */
+    public String drain(){
+        if (positions.isEmpty() && regions.isEmpty()){
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(64 + positions.size() * 256 + regions.size() * 128);
+        sb.append("{\"positions\":");
+        appendArray(sb, positions);
+        sb.append(",\"regions\":");
+        appendArray(sb, regions);
+        sb.append(",\"dropped\":").append(dropped);
+        sb.append('}');
+        dropped = 0;
+        return sb.toString();
+    }
+
+    private static void appendArray(StringBuilder sb, ArrayDeque<String> buffer){
+        boolean first = true;
+        sb.append('[');
+        for (String json : buffer){
+            if (!first){
+                sb.append(',');
+            }
+            sb.append(json);
+            first = false;
+        }
+        sb.append(']');
+        buffer.clear();
+    }
+}
@@ -0,0 +1,141 @@
+package com.ialocation.plugin;
+
+import com.indooratlas.android.sdk.IALocation;
+import com.indooratlas.android.sdk.IARegion;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Encodes positions into the compact binary format which is sent to Javascript as an ArrayBuffer.
+ * All values are little-endian. The message layout is:
+ *   header (8 bytes):  u8 version, u8 reserved, u16 fix count, u16 region count, u16 reserved
+ *   fix records (RECORD_SIZE bytes each):
+ *                      f64 latitude, f64 longitude, f64 altitude, f64 timestamp,
+ *                      f32 accuracy, f32 heading, f32 velocity, i32 floor level,
+ *                      i32 index into the region table or -1, 4 bytes padding
+ *   region table:      i32 region type, f64 timestamp, u16 id byte length, UTF-8 id
+ * The decoder is decodePositions in www/IndoorAtlas.js and both must be changed together.
+ * The encoder reuses its buffers, so an instance must only be used from one thread.
+ */
+public class BinaryLocationEncoder {
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 8;
+    public static final int RECORD_SIZE = 56;
+    /** Largest number of fixes in one message, as the header counts them in 16 bits. */
+    public static final int MAX_FIXES = 0xFFFF;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 16 * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final ArrayList<IARegion> regions = new ArrayList<IARegion>();
+    private final HashMap<String, Integer> regionIndexes = new HashMap<String, Integer>();
+    private final ArrayList<IALocation> single = new ArrayList<IALocation>(1);
+
+    /**
+     * Returns the binary message of one position.
+     * @param iaLocation
+     * @return
+     */
+    public byte[] encode(IALocation iaLocation){
+        single.clear();
+        single.add(iaLocation);
+        try{
+            return encode(single);
+        }
+        finally{
+            single.clear();
+        }
+    }
+
+    /**
+     * Returns the binary message of a list of positions.
+     * @param locations at most MAX_FIXES positions
+     * @return
+     * @throws IllegalArgumentException if there are more than MAX_FIXES positions
+     */
+    public byte[] encode(List<IALocation> locations){
+        IALocation iaLocation;
+        IARegion iaRegion;
+        byte[] id;
+        byte[] result;
+        int count = locations.size();
+        if (count > MAX_FIXES){
+            throw new IllegalArgumentException("Cannot encode " + count + " fixes in one message, the limit is " + MAX_FIXES);
+        }
+
+        regions.clear();
+        regionIndexes.clear();
+        buffer.clear();
+        ensureCapacity(HEADER_SIZE + count * RECORD_SIZE);
+        buffer.put((byte) VERSION);
+        buffer.put((byte) 0);
+        buffer.putShort((short) count);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        for (int i = 0; i < count; i++){
+            iaLocation = locations.get(i);
+            buffer.putDouble(iaLocation.getLatitude());
+            buffer.putDouble(iaLocation.getLongitude());
+            buffer.putDouble(iaLocation.getAltitude());
+            buffer.putDouble(iaLocation.getTime());
+            buffer.putFloat(iaLocation.getAccuracy());
+            buffer.putFloat(iaLocation.getBearing());
+            buffer.putFloat(iaLocation.toLocation().getSpeed());
+            buffer.putInt(iaLocation.getFloorLevel());
+            buffer.putInt(getRegionIndex(iaLocation.getRegion()));
+            buffer.putInt(0);
+        }
+        buffer.putShort(4, (short) regions.size());
+        for (int i = 0; i < regions.size(); i++){
+            iaRegion = regions.get(i);
+            id = iaRegion.getId() != null ? iaRegion.getId().getBytes(UTF_8) : new byte[0];
+            ensureCapacity(buffer.position() + 14 + id.length);
+            buffer.putInt(iaRegion.getType());
+            buffer.putDouble(iaRegion.getTimestamp());
+            buffer.putShort((short) id.length);
+            buffer.put(id);
+        }
+        result = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(result);
+        return result;
+    }
+
+    /**
+     * Returns the region table index of a region, adding it to the table on first use.
+     * @param iaRegion
+     * @return
+     */
+    private int getRegionIndex(IARegion iaRegion){
+        Integer index;
+        if (iaRegion==null){
+            return -1;
+        }
+        index = regionIndexes.get(iaRegion.getId());
+        if (index==null){
+            index = regions.size();
+            regions.add(iaRegion);
+            regionIndexes.put(iaRegion.getId(), index);
+        }
+        return index;
+    }
+
+    /**
+     * Grows the buffer, keeping its content, if it cannot hold the given number of bytes.
+     * @param capacity
+     */
+    private void ensureCapacity(int capacity){
+        ByteBuffer grown;
+        if (buffer.capacity() >= capacity){
+            return;
+        }
+        grown = ByteBuffer.allocate(Math.max(capacity, buffer.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+}
@@ -0,0 +1,168 @@
+package com.ialocation.plugin;
+
+import android.util.Log;
+import android.util.LruCache;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Two level cache of floor plan JSON text. The first level is an in-memory LRU and the second
+ * level is one file per floor plan in the app's files directory, so cached floor plans survive
+ * app restarts. Entries are never expired here, callers decide from getAge whether to use them.
+ */
+public class FloorPlanCache {
+    private static final String TAG = "FloorPlanCache";
+    private static final int MEMORY_CACHE_SIZE = 32;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final LruCache<String, Entry> memoryCache = new LruCache<String, Entry>(MEMORY_CACHE_SIZE);
+    private final File directory;
+
+    /**
+     * The constructor
+     * @param directory directory of the on-disk store, created on first write
+     */
+    public FloorPlanCache(File directory){
+        this.directory = directory;
+    }
+
+    /**
+     * Returns a floor plan cached in memory, or null. Does no disk I/O.
+     * @param floorplanId
+     * @return
+     */
+    public Entry getFromMemory(String floorplanId){
+        return memoryCache.get(floorplanId);
+    }
+
+    /**
+     * Returns a cached floor plan from memory or disk, or null if it has not been cached. Reads
+     * the disk on a memory miss, so it should not be called from the UI thread.
+     * @param floorplanId
+     * @return
+     */
+    public Entry get(String floorplanId){
+        Entry entry = memoryCache.get(floorplanId);
+        if (entry!=null){
+            return entry;
+        }
+        File file = getFile(floorplanId);
+        if (!file.isFile()){
+            return null;
+        }
+        try{
+            entry = new Entry(new String(readFile(file), UTF_8), file.lastModified());
+            memoryCache.put(floorplanId, entry);
+            return entry;
+        }
+        catch(IOException ex){
+            Log.e(TAG, ex.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Stores a floor plan in memory and on disk. Does disk I/O, so it should not be called from
+     * the UI thread.
+     * @param floorplanId
+     * @param floorPlanJson
+     * @param fetchTime the time the floor plan was fetched, in milliseconds since epoch
+     */
+    public void put(String floorplanId, String floorPlanJson, long fetchTime){
+        memoryCache.put(floorplanId, new Entry(floorPlanJson, fetchTime));
+        File file = getFile(floorplanId);
+        File tmpFile = new File(directory, file.getName() + ".tmp");
+        OutputStream out = null;
+        try{
+            if (!directory.isDirectory() && !directory.mkdirs()){
+                throw new IOException("Cannot create " + directory);
+            }
+            out = new FileOutputStream(tmpFile);
+            out.write(floorPlanJson.getBytes(UTF_8));
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(file)){
+                throw new IOException("Cannot write " + file);
+            }
+            file.setLastModified(fetchTime);
+        }
+        catch(IOException ex){
+            Log.e(TAG, ex.toString());
+        }
+        finally{
+            if (out!=null){
+                try{
+                    out.close();
+                }
+                catch(IOException ex){
+                    Log.e(TAG, ex.toString());
+                }
+            }
+        }
+    }
+
+    private File getFile(String floorplanId){
+        return new File(directory, floorplanId.replaceAll("[^A-Za-z0-9_-]", "_") + ".json");
+    }
+
+    private static byte[] readFile(File file) throws IOException{
+        InputStream in = new FileInputStream(file);
+        try{
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            byte[] chunk = new byte[4096];
+            int read;
+            while ((read = in.read(chunk)) != -1){
+                out.write(chunk, 0, read);
+            }
+            return out.toByteArray();
+        }
+        finally{
+            in.close();
+        }
+    }
+
+    /**
+     * A cached floor plan and the time it was fetched.
+     */
+    public static class Entry {
+        public final String json;
+        public final long fetchTime;
+        private FloorPlanProjection projection;
+
+        Entry(String json, long fetchTime){
+            this.json = json;
+            this.fetchTime = fetchTime;
+        }
+
+        /**
+         * Returns the age of the entry in milliseconds.
+         * @return
+         */
+        public long getAge(){
+            return System.currentTimeMillis() - fetchTime;
+        }
+
+        /**
+         * Returns the pixel projection of the floor plan, built on first use. A refetched floor
+         * plan gets a new entry, so the projection never outlives the corners it was built from.
+         * @return
+         * @throws JSONException
+         */
+        public synchronized FloorPlanProjection getProjection() throws JSONException{
+            if (projection==null){
+                projection = new FloorPlanProjection(new JSONObject(json));
+            }
+            return projection;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.ialocation.plugin;
+
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.indooratlas.android.sdk.resources.IAFloorPlan;
+import com.indooratlas.android.sdk.resources.IALatLng;
+import com.indooratlas.android.sdk.resources.IAResourceManager;
+import com.indooratlas.android.sdk.resources.IAResult;
+import com.indooratlas.android.sdk.resources.IAResultCallback;
+import com.indooratlas.android.sdk.resources.IATask;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Fetches floor plans from IndoorAtlas. Any number of fetches can run at the same time, each
+ * with its own callback, and concurrent requests for the same floor plan share one task.
+ * Requests made in "latest wins" mode cancel the previous latest wins request, which is how
+ * fetchFloorplan behaved before.
+ * Fetched floor plans are kept in a FloorPlanCache. A cached floor plan younger than the
+ * request's maxAge is returned without a network call, and in stale-while-revalidate mode an
+ * older one is returned immediately while it is refreshed in the background. If a fetch fails,
+ * any cached copy is returned instead of an error.
+ * Only the memory level of the cache is read on the calling thread and on the looper of the
+ * fetch tasks. Disk reads and writes run on the disk executor.
+ */
+public class FloorPlanFetcher {
+    private static final String TAG = "FloorPlanFetcher";
+    public static final long DEFAULT_MAX_AGE_MS = 24 * 60 * 60 * 1000L;
+
+    private final IAResourceManager resourceManager;
+    private final FloorPlanCache cache;
+    private final Executor diskExecutor;
+    private final PluginMetrics metrics;
+    private final HashMap<String, PendingFetch> pendingFetches = new HashMap<String, PendingFetch>();
+    private CallbackContext latestWinsCallback;
+    private String latestWinsFloorPlanId;
+
+    /**
+     * The constructor
+     * @param resourceManager
+     * @param cache
+     * @param diskExecutor executor used to read and write the disk cache
+     * @param metrics
+     */
+    public FloorPlanFetcher(IAResourceManager resourceManager, FloorPlanCache cache, Executor diskExecutor, PluginMetrics metrics){
+        this.resourceManager = resourceManager;
+        this.cache = cache;
+        this.diskExecutor = diskExecutor;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns a floor plan from the cache if it is fresh enough, otherwise starts a fetch or
+     * joins the one already running for the same floor plan. A floor plan which is not in the
+     * memory cache is looked up on disk on the disk executor, so the call does no disk I/O.
+     * @param floorplanId
+     * @param options fetchFloorPlanWithId options (latestWins, maxAge, staleWhileRevalidate), may be null
+     * @param callbackContext
+     */
+    public void fetch(final String floorplanId, JSONObject options, final CallbackContext callbackContext){
+        long maxAge = DEFAULT_MAX_AGE_MS;
+        boolean staleWhileRevalidate = false;
+        boolean latestWins = false;
+        FloorPlanCache.Entry entry;
+        if (options!=null){
+            maxAge = options.optLong("maxAge", DEFAULT_MAX_AGE_MS);
+            staleWhileRevalidate = options.optBoolean("staleWhileRevalidate", false);
+            latestWins = options.optBoolean("latestWins", false);
+        }
+        if (latestWins){
+            // Claimed in call order, so a slower disk lookup cannot supersede a later request
+            setLatestWins(floorplanId, callbackContext);
+        }
+        entry = cache.getFromMemory(floorplanId);
+        if (entry!=null){
+            fetch(floorplanId, entry, maxAge, staleWhileRevalidate, latestWins, callbackContext);
+            return;
+        }
+        final long diskMaxAge = maxAge;
+        final boolean diskStaleWhileRevalidate = staleWhileRevalidate;
+        final boolean diskLatestWins = latestWins;
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                fetch(floorplanId, cache.get(floorplanId), diskMaxAge, diskStaleWhileRevalidate, diskLatestWins, callbackContext);
+            }
+        });
+    }
+
+    /**
+     * Answers a request from its cache entry if it is fresh enough, otherwise starts a fetch.
+     * @param floorplanId
+     * @param entry the cached floor plan, or null
+     * @param maxAge
+     * @param staleWhileRevalidate
+     * @param latestWins
+     * @param callbackContext
+     */
+    private void fetch(String floorplanId, FloorPlanCache.Entry entry, long maxAge, boolean staleWhileRevalidate,
+                       boolean latestWins, CallbackContext callbackContext){
+        if (entry!=null && (entry.getAge() <= maxAge || staleWhileRevalidate)){
+            if (latestWins && !clearLatestWins(callbackContext)){
+                // Superseded while the cache was read, NO_RESULT has been sent
+                return;
+            }
+            metrics.floorPlanCacheHits.incrementAndGet();
+            callbackContext.sendPluginResult(new JsonPluginResult(PluginResult.Status.OK, entry.json, false));
+            if (entry.getAge() > maxAge){
+                startFetch(floorplanId, false, null);
+            }
+            return;
+        }
+        metrics.floorPlanCacheMisses.incrementAndGet();
+        startFetch(floorplanId, latestWins, callbackContext);
+    }
+
+    /**
+     * Starts a fetch, or joins the one already running for the same floor plan.
+     * @param floorplanId
+     * @param latestWins if true, the request is dropped if it has been superseded
+     * @param callbackContext callback of the request, or null for a background refresh
+     */
+    private synchronized void startFetch(final String floorplanId, boolean latestWins, CallbackContext callbackContext){
+        PendingFetch pendingFetch;
+        if (latestWins && latestWinsCallback!=callbackContext){
+            return;
+        }
+        pendingFetch = pendingFetches.get(floorplanId);
+        if (pendingFetch!=null){
+            if (callbackContext!=null){
+                pendingFetch.callbacks.add(callbackContext);
+            }
+            return;
+        }
+        pendingFetch = new PendingFetch(resourceManager.fetchFloorPlanWithId(floorplanId));
+        if (callbackContext!=null){
+            pendingFetch.callbacks.add(callbackContext);
+        }
+        pendingFetches.put(floorplanId, pendingFetch);
+        pendingFetch.task.setCallback(new IAResultCallback<IAFloorPlan>() {
+            @Override
+            public void onResult(IAResult<IAFloorPlan> iaResult) {
+                onFetchResult(floorplanId, iaResult);
+            }
+        }, Looper.getMainLooper());
+    }
+
+    /**
+     * Cancels all running fetches.
+     */
+    public synchronized void cancelAll(){
+        for (PendingFetch pendingFetch : pendingFetches.values()){
+            pendingFetch.task.cancel();
+        }
+        pendingFetches.clear();
+        latestWinsCallback = null;
+        latestWinsFloorPlanId = null;
+    }
+
+    /**
+     * Makes a request the latest wins request. The previous one, if it has not been answered
+     * yet, gets NO_RESULT and is detached from its fetch, which is cancelled if no other request
+     * is waiting for it.
+     * @param floorplanId
+     * @param callbackContext
+     */
+    private synchronized void setLatestWins(String floorplanId, CallbackContext callbackContext){
+        PendingFetch pendingFetch;
+        if (latestWinsCallback!=null){
+            pendingFetch = pendingFetches.get(latestWinsFloorPlanId);
+            if (pendingFetch!=null && pendingFetch.callbacks.remove(latestWinsCallback) && pendingFetch.callbacks.isEmpty()){
+                pendingFetch.task.cancel();
+                pendingFetches.remove(latestWinsFloorPlanId);
+            }
+            latestWinsCallback.sendPluginResult(new PluginResult(PluginResult.Status.NO_RESULT));
+        }
+        latestWinsCallback = callbackContext;
+        latestWinsFloorPlanId = floorplanId;
+    }
+
+    /**
+     * Clears the latest wins request before it is answered from the cache.
+     * @param callbackContext
+     * @return false if the request has been superseded
+     */
+    private synchronized boolean clearLatestWins(CallbackContext callbackContext){
+        if (latestWinsCallback!=callbackContext){
+            return false;
+        }
+        latestWinsCallback = null;
+        latestWinsFloorPlanId = null;
+        return true;
+    }
+
+    /**
+     * Stores the result of a fetch in the cache and delivers it to every request waiting for it.
+     * A failed fetch is answered from the disk cache on the disk executor.
+     * @param floorplanId
+     * @param iaResult
+     */
+    private void onFetchResult(final String floorplanId, IAResult<IAFloorPlan> iaResult){
+        final PendingFetch pendingFetch;
+        IAFloorPlan floorPlan;
+        PluginResult pluginResult;
+        synchronized (this){
+            pendingFetch = pendingFetches.remove(floorplanId);
+            if (pendingFetch==null){
+                return;
+            }
+            if (pendingFetch.callbacks.contains(latestWinsCallback)){
+                latestWinsCallback = null;
+                latestWinsFloorPlanId = null;
+            }
+        }
+        metrics.floorPlanFetchMillis.record(SystemClock.elapsedRealtime() - pendingFetch.startTime);
+        floorPlan = iaResult.getResult();
+        if (floorPlan!=null){
+            final String floorPlanJson = getFloorPlanJSON(floorPlan).toString();
+            final long fetchTime = System.currentTimeMillis();
+            diskExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    cache.put(floorplanId, floorPlanJson, fetchTime);
+                }
+            });
+            pluginResult = new JsonPluginResult(PluginResult.Status.OK, floorPlanJson, false);
+        }
+        else{
+            if (!pendingFetch.callbacks.isEmpty()){
+                diskExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        sendResult(pendingFetch.callbacks, getFallbackResult(floorplanId));
+                    }
+                });
+            }
+            return;
+        }
+        sendResult(pendingFetch.callbacks, pluginResult);
+    }
+
+    private static void sendResult(ArrayList<CallbackContext> callbacks, PluginResult pluginResult){
+        for (CallbackContext callbackContext : callbacks){
+            callbackContext.sendPluginResult(pluginResult);
+        }
+    }
+
+    /**
+     * Returns the cached copy of a floor plan regardless of its age, or an error if the floor
+     * plan has never been cached.
+     * @param floorplanId
+     * @return
+     */
+    private PluginResult getFallbackResult(String floorplanId){
+        FloorPlanCache.Entry entry = cache.get(floorplanId);
+        if (entry!=null){
+            return new JsonPluginResult(PluginResult.Status.OK, entry.json, false);
+        }
+        return new PluginResult(PluginResult.Status.ERROR, PositionError.getErrorObject(PositionError.FLOOR_PLAN_UNAVAILABLE));
+    }
+
+    /**
+     * Returns a JSON object which contains IAFloorPlan info.
+     * @param floorPlan
+     * @return
+     */
+    public static JSONObject getFloorPlanJSON(IAFloorPlan floorPlan){
+        JSONObject floorplanInfo;
+        try{
+            floorplanInfo = new JSONObject();
+            floorplanInfo.put("id",floorPlan.getId());
+            floorplanInfo.put("name",floorPlan.getName());
+            floorplanInfo.put("url",floorPlan.getUrl());
+            floorplanInfo.put("floorLevel",floorPlan.getFloorLevel());
+            floorplanInfo.put("bearing",floorPlan.getBearing());
+            floorplanInfo.put("bitmapHeight",floorPlan.getBitmapHeight());
+            floorplanInfo.put("bitmapWidth",floorPlan.getBitmapWidth());
+            floorplanInfo.put("heightMeters",floorPlan.getHeightMeters());
+            floorplanInfo.put("widthMeters",floorPlan.getWidthMeters());
+            floorplanInfo.put("metersToPixels",floorPlan.getMetersToPixels());
+            floorplanInfo.put("pixelsToMeters",floorPlan.getPixelsToMeters());
+            floorplanInfo.put("bottomLeft",getLatLngJSON(floorPlan.getBottomLeft()));
+            floorplanInfo.put("center",getLatLngJSON(floorPlan.getCenter()));
+            floorplanInfo.put("topLeft",getLatLngJSON(floorPlan.getTopLeft()));
+            floorplanInfo.put("topRight",getLatLngJSON(floorPlan.getTopRight()));
+            return floorplanInfo;
+        }
+        catch(JSONException ex){
+            Log.e(TAG, ex.toString());
+            throw new IllegalStateException(ex.getMessage());
+        }
+    }
+
+    /**
+     * Returns a [longitude, latitude] JSON array.
+     * @param iaLatLng
+     * @return
+     * @throws JSONException
+     */
+    private static JSONArray getLatLngJSON(IALatLng iaLatLng) throws JSONException{
+        JSONArray latlngArray = new JSONArray();
+        latlngArray.put(iaLatLng.longitude);
+        latlngArray.put(iaLatLng.latitude);
+        return latlngArray;
+    }
+
+    /**
+     * A running fetch task and the requests waiting for it.
+     */
+    private static class PendingFetch {
+        final IATask<IAFloorPlan> task;
+        final ArrayList<CallbackContext> callbacks = new ArrayList<CallbackContext>();
+        final long startTime = SystemClock.elapsedRealtime();
+
+        PendingFetch(IATask<IAFloorPlan> task){
+            this.task = task;
+        }
+    }
+}
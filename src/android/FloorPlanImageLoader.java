@@ -0,0 +1,307 @@
+package com.ialocation.plugin;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Downloads floor plan images and decodes them natively with downsampling, so that the WebView
+ * only has to load an image of the size it will display. Original and downsampled images are
+ * kept as files in a least recently used cache bounded by total size in bytes.
+ * Images are processed one at a time on a dedicated thread, which keeps only one full size
+ * decode in memory at once and lets concurrent requests for the same image reuse the first
+ * result.
+ */
+public class FloorPlanImageLoader {
+    private static final String TAG = "FloorPlanImageLoader";
+    private static final long DEFAULT_MAX_CACHE_BYTES = 64L * 1024 * 1024;
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+    private static final int JPEG_QUALITY = 90;
+
+    private final File directory;
+    private final long maxCacheBytes;
+    private final LinkedHashMap<String, Long> fileSizes = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private long cacheBytes = 0;
+    private boolean indexed = false;
+
+    /**
+     * Callback for image requests. Called on the loader thread.
+     */
+    public interface Callback {
+        void onImage(String uri, int width, int height);
+        void onError(String message);
+    }
+
+    /**
+     * The constructor
+     * @param directory directory of the image cache
+     */
+    public FloorPlanImageLoader(File directory){
+        this(directory, DEFAULT_MAX_CACHE_BYTES);
+    }
+
+    /**
+     * The constructor
+     * @param directory directory of the image cache
+     * @param maxCacheBytes total size of cached images after which least recently used ones are deleted
+     */
+    public FloorPlanImageLoader(File directory, long maxCacheBytes){
+        this.directory = directory;
+        this.maxCacheBytes = maxCacheBytes;
+    }
+
+    /**
+     * Queues a request for a floor plan image.
+     * @param floorplanId
+     * @param url image URL of the floor plan
+     * @param bitmapWidth width of the floor plan image as reported by IndoorAtlas, or 0 if unknown
+     * @param bitmapHeight height of the floor plan image as reported by IndoorAtlas, or 0 if unknown
+     * @param maxDimension largest width or height of the returned image, or 0 for the original image
+     * @param callback
+     */
+    public void load(final String floorplanId, final String url, final int bitmapWidth, final int bitmapHeight,
+                     final int maxDimension, final Callback callback){
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try{
+                    loadImage(floorplanId, url, bitmapWidth, bitmapHeight, maxDimension, callback);
+                }
+                catch(Exception ex){
+                    Log.e(TAG, ex.toString());
+                    callback.onError(ex.toString());
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops the loader thread. Queued requests are dropped.
+     */
+    public void shutdown(){
+        executor.shutdownNow();
+    }
+
+    private void loadImage(String floorplanId, String url, int bitmapWidth, int bitmapHeight, int maxDimension,
+                           Callback callback) throws IOException{
+        BitmapFactory.Options options;
+        String originalKey;
+        String scaledKey;
+        File original;
+        File scaled;
+        Bitmap bitmap;
+
+        indexDirectory();
+        originalKey = sanitize(floorplanId) + "_" + Integer.toHexString(url.hashCode());
+        original = get(originalKey);
+        if (original==null){
+            original = download(url, new File(directory, originalKey));
+            put(originalKey, original);
+        }
+        if (bitmapWidth <= 0 || bitmapHeight <= 0){
+            options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(original.getPath(), options);
+            bitmapWidth = options.outWidth;
+            bitmapHeight = options.outHeight;
+        }
+        if (maxDimension <= 0 || (bitmapWidth <= maxDimension && bitmapHeight <= maxDimension)){
+            callback.onImage(Uri.fromFile(original).toString(), bitmapWidth, bitmapHeight);
+            return;
+        }
+
+        scaledKey = originalKey + "_" + maxDimension;
+        scaled = get(scaledKey);
+        if (scaled==null){
+            options = new BitmapFactory.Options();
+            options.inSampleSize = getSampleSize(bitmapWidth, bitmapHeight, maxDimension);
+            bitmap = BitmapFactory.decodeFile(original.getPath(), options);
+            if (bitmap==null){
+                throw new IOException("Cannot decode floor plan image " + url);
+            }
+            bitmap = scaleToFit(bitmap, maxDimension);
+            scaled = new File(directory, scaledKey);
+            writeBitmap(bitmap, scaled);
+            bitmap.recycle();
+            put(scaledKey, scaled);
+        }
+        options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(scaled.getPath(), options);
+        callback.onImage(Uri.fromFile(scaled).toString(), options.outWidth, options.outHeight);
+    }
+
+    /**
+     * Returns the largest power of two sample size which still decodes the image at least as
+     * large as maxDimension.
+     */
+    static int getSampleSize(int width, int height, int maxDimension){
+        int sampleSize = 1;
+        int largest = Math.max(width, height);
+        while (largest / (sampleSize * 2) >= maxDimension){
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Scales a decoded bitmap down so that neither side exceeds maxDimension.
+     */
+    private static Bitmap scaleToFit(Bitmap bitmap, int maxDimension){
+        Bitmap scaled;
+        int largest = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (largest <= maxDimension){
+            return bitmap;
+        }
+        float scale = (float) maxDimension / largest;
+        scaled = Bitmap.createScaledBitmap(bitmap, Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+        if (scaled != bitmap){
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+
+    private static void writeBitmap(Bitmap bitmap, File file) throws IOException{
+        File tmpFile = new File(file.getPath() + ".tmp");
+        OutputStream out = new FileOutputStream(tmpFile);
+        try{
+            if (bitmap.hasAlpha()){
+                bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+            }
+            else{
+                bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            }
+        }
+        finally{
+            out.close();
+        }
+        if (!tmpFile.renameTo(file)){
+            throw new IOException("Cannot write " + file);
+        }
+    }
+
+    private File download(String url, File file) throws IOException{
+        File tmpFile = new File(file.getPath() + ".tmp");
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        try{
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK){
+                throw new IOException("Floor plan image download failed with HTTP " + connection.getResponseCode());
+            }
+            InputStream in = connection.getInputStream();
+            OutputStream out = new FileOutputStream(tmpFile);
+            try{
+                byte[] chunk = new byte[16 * 1024];
+                int read;
+                while ((read = in.read(chunk)) != -1){
+                    out.write(chunk, 0, read);
+                }
+            }
+            finally{
+                out.close();
+                in.close();
+            }
+        }
+        finally{
+            connection.disconnect();
+        }
+        if (!tmpFile.renameTo(file)){
+            throw new IOException("Cannot write " + file);
+        }
+        return file;
+    }
+
+    /**
+     * Registers images left in the cache directory by earlier runs, oldest first.
+     */
+    private void indexDirectory() throws IOException{
+        File[] existing;
+        if (indexed){
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()){
+            throw new IOException("Cannot create " + directory);
+        }
+        existing = directory.listFiles();
+        if (existing!=null){
+            Arrays.sort(existing, new Comparator<File>() {
+                @Override
+                public int compare(File a, File b) {
+                    return Long.valueOf(a.lastModified()).compareTo(b.lastModified());
+                }
+            });
+            for (File file : existing){
+                if (file.getName().endsWith(".tmp")){
+                    file.delete();
+                }
+                else{
+                    fileSizes.put(file.getName(), file.length());
+                    cacheBytes += file.length();
+                }
+            }
+        }
+        indexed = true;
+    }
+
+    private File get(String key){
+        File file;
+        Long size = fileSizes.get(key);
+        if (size==null){
+            return null;
+        }
+        file = new File(directory, key);
+        if (!file.isFile()){
+            fileSizes.remove(key);
+            cacheBytes -= size;
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * Adds an image to the cache and deletes least recently used images over the size limit.
+     * The image just added is never deleted.
+     */
+    private void put(String key, File file){
+        Long previous = fileSizes.put(key, file.length());
+        if (previous!=null){
+            cacheBytes -= previous;
+        }
+        cacheBytes += file.length();
+        Iterator<Map.Entry<String, Long>> iterator = fileSizes.entrySet().iterator();
+        while (cacheBytes > maxCacheBytes && iterator.hasNext()){
+            Map.Entry<String, Long> entry = iterator.next();
+            if (entry.getKey().equals(key)){
+                continue;
+            }
+            cacheBytes -= entry.getValue();
+            new File(directory, entry.getKey()).delete();
+            iterator.remove();
+        }
+    }
+
+    private static String sanitize(String floorplanId){
+        return floorplanId.replaceAll("[^A-Za-z0-9_-]", "_");
+    }
+}
@@ -0,0 +1,143 @@
+package com.ialocation.plugin;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Affine transform between WGS84 coordinates and the pixels of a floor plan bitmap, built from
+ * the floor plan's corner coordinates. Coordinates are mapped to a local east/north plane in
+ * meters around the top left corner, where the bitmap is a parallelogram, so the transform is
+ * exact to well below a pixel for building sized floor plans. All arithmetic is in double
+ * precision; android.graphics.Matrix is float only, which loses centimeters at geographic
+ * magnitudes.
+ */
+public class FloorPlanProjection {
+    private static final double EARTH_RADIUS_METERS = 6371008.8;
+
+    private final String floorPlanId;
+    private final double originLatitude;
+    private final double originLongitude;
+    private final double metersPerDegreeLatitude;
+    private final double metersPerDegreeLongitude;
+    // Pixels to east/north meters
+    private final double a00, a01, a10, a11;
+    // East/north meters to pixels
+    private final double b00, b01, b10, b11;
+
+    /**
+     * Creates the projection of a floor plan from the JSON returned by fetchFloorplan.
+     * @param floorPlan
+     * @throws JSONException if the floor plan has no corners or bitmap size
+     */
+    public FloorPlanProjection(JSONObject floorPlan) throws JSONException{
+        JSONArray topLeft = floorPlan.getJSONArray("topLeft");
+        JSONArray topRight = floorPlan.getJSONArray("topRight");
+        JSONArray bottomLeft = floorPlan.getJSONArray("bottomLeft");
+        double width = floorPlan.getDouble("bitmapWidth");
+        double height = floorPlan.getDouble("bitmapHeight");
+        double determinant;
+        floorPlanId = floorPlan.getString("id");
+        // Corners are [longitude, latitude]
+        originLongitude = topLeft.getDouble(0);
+        originLatitude = topLeft.getDouble(1);
+        metersPerDegreeLatitude = Math.toRadians(EARTH_RADIUS_METERS);
+        metersPerDegreeLongitude = metersPerDegreeLatitude * Math.cos(Math.toRadians(originLatitude));
+        if (width <= 0 || height <= 0){
+            throw new JSONException("Floor plan " + floorPlanId + " has no bitmap size");
+        }
+        a00 = (topRight.getDouble(0) - originLongitude) * metersPerDegreeLongitude / width;
+        a10 = (topRight.getDouble(1) - originLatitude) * metersPerDegreeLatitude / width;
+        a01 = (bottomLeft.getDouble(0) - originLongitude) * metersPerDegreeLongitude / height;
+        a11 = (bottomLeft.getDouble(1) - originLatitude) * metersPerDegreeLatitude / height;
+        determinant = a00 * a11 - a01 * a10;
+        if (determinant == 0){
+            throw new JSONException("Floor plan " + floorPlanId + " has degenerate corners");
+        }
+        b00 = a11 / determinant;
+        b01 = -a01 / determinant;
+        b10 = -a10 / determinant;
+        b11 = a00 / determinant;
+    }
+
+    public String getFloorPlanId(){
+        return floorPlanId;
+    }
+
+    /**
+     * Converts a coordinate to bitmap pixels.
+     * @param latitude
+     * @param longitude
+     * @param out receives x and y
+     */
+    public void toPixel(double latitude, double longitude, double[] out){
+        double east = (longitude - originLongitude) * metersPerDegreeLongitude;
+        double north = (latitude - originLatitude) * metersPerDegreeLatitude;
+        out[0] = b00 * east + b01 * north;
+        out[1] = b10 * east + b11 * north;
+    }
+
+    /**
+     * Converts bitmap pixels to a coordinate.
+     * @param x
+     * @param y
+     * @param out receives latitude and longitude
+     */
+    public void toCoordinate(double x, double y, double[] out){
+        double east = a00 * x + a01 * y;
+        double north = a10 * x + a11 * y;
+        out[0] = originLatitude + north / metersPerDegreeLatitude;
+        out[1] = originLongitude + east / metersPerDegreeLongitude;
+    }
+
+    /**
+     * Converts a flat [latitude, longitude, ...] array to the JSON text of a flat [x, y, ...] array.
+     * @param coordinates
+     * @return
+     * @throws JSONException if the array has an odd length or a non-numeric element
+     */
+    public String toPixels(JSONArray coordinates) throws JSONException{
+        double[] point = new double[2];
+        checkPairs(coordinates);
+        StringBuilder sb = new StringBuilder(2 + coordinates.length() * 20);
+        sb.append('[');
+        for (int i = 0; i + 1 < coordinates.length(); i += 2){
+            toPixel(coordinates.getDouble(i), coordinates.getDouble(i + 1), point);
+            appendPair(sb, point, i);
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Converts a flat [x, y, ...] array to the JSON text of a flat [latitude, longitude, ...] array.
+     * @param pixels
+     * @return
+     * @throws JSONException if the array has an odd length or a non-numeric element
+     */
+    public String toCoordinates(JSONArray pixels) throws JSONException{
+        double[] point = new double[2];
+        checkPairs(pixels);
+        StringBuilder sb = new StringBuilder(2 + pixels.length() * 20);
+        sb.append('[');
+        for (int i = 0; i + 1 < pixels.length(); i += 2){
+            toCoordinate(pixels.getDouble(i), pixels.getDouble(i + 1), point);
+            appendPair(sb, point, i);
+        }
+        return sb.append(']').toString();
+    }
+
+    private static void checkPairs(JSONArray points) throws JSONException{
+        if (points.length() % 2 != 0){
+            throw new JSONException("Expected pairs of numbers, got " + points.length() + " numbers");
+        }
+    }
+
+    private static void appendPair(StringBuilder sb, double[] point, int index){
+        if (index > 0){
+            sb.append(',');
+        }
+        LocationEncoder.appendNumber(sb, point[0]);
+        sb.append(',');
+        LocationEncoder.appendNumber(sb, point[1]);
+    }
+}
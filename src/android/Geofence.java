@@ -0,0 +1,126 @@
+package com.ialocation.plugin;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A polygon zone registered from JS. A geofence applies to one floor plan, to one floor level,
+ * or to every floor when neither is given. Vertices are latitude/longitude pairs; zones are
+ * small enough that containment is tested in the plane of latitude and longitude.
+ */
+public class Geofence {
+    private final String id;
+    private final String name;
+    private final String floorPlanId;
+    private final Integer floorLevel;
+    private final long dwellMs;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double minLatitude;
+    private final double maxLatitude;
+    private final double minLongitude;
+    private final double maxLongitude;
+
+    /**
+     * Creates a geofence from its JS definition:
+     * {id, name, floorPlanId, floor, dwellMs, vertices: [[latitude, longitude], ...]}
+     * @param json
+     * @throws JSONException if the id or at least three vertices are missing
+     */
+    public Geofence(JSONObject json) throws JSONException{
+        JSONArray vertices = json.getJSONArray("vertices");
+        JSONArray vertex;
+        double minLat = Double.MAX_VALUE;
+        double maxLat = -Double.MAX_VALUE;
+        double minLon = Double.MAX_VALUE;
+        double maxLon = -Double.MAX_VALUE;
+        id = json.getString("id");
+        name = json.optString("name", null);
+        floorPlanId = json.optString("floorPlanId", null);
+        floorLevel = json.has("floor") && !json.isNull("floor") ? Integer.valueOf(json.getInt("floor")) : null;
+        dwellMs = Math.max(0, json.optLong("dwellMs", 0));
+        if (vertices.length() < 3){
+            throw new JSONException("Geofence " + id + " needs at least three vertices");
+        }
+        latitudes = new double[vertices.length()];
+        longitudes = new double[vertices.length()];
+        for (int i = 0; i < vertices.length(); i++){
+            vertex = vertices.getJSONArray(i);
+            latitudes[i] = vertex.getDouble(0);
+            longitudes[i] = vertex.getDouble(1);
+            minLat = Math.min(minLat, latitudes[i]);
+            maxLat = Math.max(maxLat, latitudes[i]);
+            minLon = Math.min(minLon, longitudes[i]);
+            maxLon = Math.max(maxLon, longitudes[i]);
+        }
+        minLatitude = minLat;
+        maxLatitude = maxLat;
+        minLongitude = minLon;
+        maxLongitude = maxLon;
+    }
+
+    public String getId(){
+        return id;
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    public String getFloorPlanId(){
+        return floorPlanId;
+    }
+
+    /**
+     * Returns the floor level the geofence applies to, or null.
+     * @return
+     */
+    public Integer getFloorLevel(){
+        return floorLevel;
+    }
+
+    /**
+     * Returns the time inside after which a dwell transition is reported, or 0 for none.
+     * @return
+     */
+    public long getDwellMs(){
+        return dwellMs;
+    }
+
+    public double getMinLatitude(){
+        return minLatitude;
+    }
+
+    public double getMaxLatitude(){
+        return maxLatitude;
+    }
+
+    public double getMinLongitude(){
+        return minLongitude;
+    }
+
+    public double getMaxLongitude(){
+        return maxLongitude;
+    }
+
+    /**
+     * Returns true if the point is inside the polygon, using the even-odd rule.
+     * @param latitude
+     * @param longitude
+     * @return
+     */
+    public boolean contains(double latitude, double longitude){
+        boolean inside = false;
+        if (latitude < minLatitude || latitude > maxLatitude || longitude < minLongitude || longitude > maxLongitude){
+            return false;
+        }
+        for (int i = 0, j = latitudes.length - 1; i < latitudes.length; j = i++){
+            if ((latitudes[i] > latitude) != (latitudes[j] > latitude)
+                    && longitude < (longitudes[j] - longitudes[i]) * (latitude - latitudes[i]) / (latitudes[j] - latitudes[i]) + longitudes[i]){
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+}
@@ -0,0 +1,248 @@
+package com.ialocation.plugin;
+
+import com.indooratlas.android.sdk.IALocation;
+import com.indooratlas.android.sdk.IARegion;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Evaluates fixes against polygon geofences and reports enter, exit and dwell transitions.
+ * Geofences are indexed per scope (floor plan, floor level or all floors) in a uniform grid of
+ * CELL_DEGREES cells, so a fix is only tested against the geofences of the cell it falls in,
+ * however many geofences are registered. Geofences covering more than MAX_CELLS cells are
+ * kept in a separate list of each scope and tested by bounding box.
+ * Geofences are added and removed from the WebView thread. Writers rebuild the index under a
+ * lock and publish it as an immutable snapshot, like SubscriberRegistry; evaluation happens
+ * on the positioning thread only.
+ */
+public class GeofenceEngine {
+    public static final int REGION_TYPE_GEOFENCE = 100;
+    private static final double CELL_DEGREES = 0.0001;
+    private static final int MAX_CELLS = 1024;
+    private static final String SCOPE_ALL = "all";
+
+    private final Object writeLock = new Object();
+    private volatile Index index = new Index(new HashMap<String, Geofence>());
+    private final HashMap<String, Inside> inside = new HashMap<String, Inside>();
+    private final StringBuilder buffer = new StringBuilder(160);
+    private long generation = 0;
+
+    /**
+     * Adds geofences, replacing any geofences with the same ids.
+     * @param geofences
+     */
+    public void add(Collection<Geofence> geofences){
+        synchronized (writeLock){
+            HashMap<String, Geofence> byId = new HashMap<String, Geofence>(index.byId);
+            for (Geofence geofence : geofences){
+                byId.put(geofence.getId(), geofence);
+            }
+            index = new Index(byId);
+        }
+    }
+
+    /**
+     * Removes geofences. Removed geofences report no exit.
+     * @param ids
+     */
+    public void remove(Collection<String> ids){
+        synchronized (writeLock){
+            HashMap<String, Geofence> byId = new HashMap<String, Geofence>(index.byId);
+            for (String id : ids){
+                byId.remove(id);
+            }
+            index = new Index(byId);
+        }
+    }
+
+    public void clear(){
+        synchronized (writeLock){
+            index = new Index(new HashMap<String, Geofence>());
+        }
+    }
+
+    public boolean isEmpty(){
+        return index.byId.isEmpty();
+    }
+
+    /**
+     * Evaluates a fix and appends each resulting transition to events. Only called on the
+     * positioning thread.
+     * @param iaLocation
+     * @param events
+     */
+    public void evaluate(IALocation iaLocation, List<Transition> events){
+        Index current = index;
+        IARegion region = iaLocation.getRegion();
+        long time = iaLocation.getTime();
+        Inside state;
+        if (current.byId.isEmpty() && inside.isEmpty()){
+            return;
+        }
+        generation++;
+        if (region!=null && region.getType() == IARegion.TYPE_FLOOR_PLAN){
+            visit(current.grids.get("plan:" + region.getId()), iaLocation, events);
+        }
+        visit(current.grids.get("floor:" + iaLocation.getFloorLevel()), iaLocation, events);
+        visit(current.grids.get(SCOPE_ALL), iaLocation, events);
+        Iterator<Inside> iterator = inside.values().iterator();
+        while (iterator.hasNext()){
+            state = iterator.next();
+            if (!current.byId.containsKey(state.geofence.getId())){
+                iterator.remove();
+            }
+            else if (state.generation != generation){
+                iterator.remove();
+                events.add(encode(state.geofence, time, IndoorLocationListener.TRANSITION_TYPE_EXIT));
+            }
+            else if (!state.dwelled && state.geofence.getDwellMs() > 0 && time - state.enterTime >= state.geofence.getDwellMs()){
+                state.dwelled = true;
+                events.add(encode(state.geofence, time, IndoorLocationListener.TRANSITION_TYPE_DWELL));
+            }
+        }
+    }
+
+    private void visit(Grid grid, IALocation iaLocation, List<Transition> events){
+        double latitude = iaLocation.getLatitude();
+        double longitude = iaLocation.getLongitude();
+        if (grid==null){
+            return;
+        }
+        List<Geofence> cell = grid.cells.get(getCellKey(getCell(latitude), getCell(longitude)));
+        if (cell!=null){
+            for (Geofence geofence : cell){
+                test(geofence, iaLocation, events);
+            }
+        }
+        for (Geofence geofence : grid.large){
+            test(geofence, iaLocation, events);
+        }
+    }
+
+    private void test(Geofence geofence, IALocation iaLocation, List<Transition> events){
+        Inside state;
+        if (!geofence.contains(iaLocation.getLatitude(), iaLocation.getLongitude())){
+            return;
+        }
+        state = inside.get(geofence.getId());
+        if (state==null){
+            state = new Inside(geofence, iaLocation.getTime());
+            inside.put(geofence.getId(), state);
+            events.add(encode(geofence, iaLocation.getTime(), IndoorLocationListener.TRANSITION_TYPE_ENTER));
+        }
+        state.geofence = geofence;
+        state.generation = generation;
+    }
+
+    private Transition encode(Geofence geofence, long time, int transitionType){
+        buffer.setLength(0);
+        buffer.append("{\"regionId\":");
+        LocationEncoder.appendString(buffer, geofence.getId());
+        buffer.append(",\"name\":");
+        LocationEncoder.appendString(buffer, geofence.getName());
+        buffer.append(",\"timestamp\":").append(time);
+        buffer.append(",\"regionType\":").append(REGION_TYPE_GEOFENCE);
+        buffer.append(",\"transitionType\":").append(transitionType);
+        buffer.append('}');
+        return new Transition(geofence.getId(), buffer.toString());
+    }
+
+    private static long getCell(double degrees){
+        return (long) Math.floor(degrees / CELL_DEGREES);
+    }
+
+    private static long getCellKey(long latitudeCell, long longitudeCell){
+        return (latitudeCell << 32) ^ (longitudeCell & 0xffffffffL);
+    }
+
+    private static String getScope(Geofence geofence){
+        if (geofence.getFloorPlanId()!=null){
+            return "plan:" + geofence.getFloorPlanId();
+        }
+        if (geofence.getFloorLevel()!=null){
+            return "floor:" + geofence.getFloorLevel();
+        }
+        return SCOPE_ALL;
+    }
+
+    /**
+     * Immutable snapshot of the registered geofences and their grids by scope.
+     */
+    private static class Index {
+        final HashMap<String, Geofence> byId;
+        final HashMap<String, Grid> grids = new HashMap<String, Grid>();
+
+        Index(HashMap<String, Geofence> byId){
+            this.byId = byId;
+            for (Geofence geofence : byId.values()){
+                String scope = getScope(geofence);
+                Grid grid = grids.get(scope);
+                if (grid==null){
+                    grid = new Grid();
+                    grids.put(scope, grid);
+                }
+                grid.add(geofence);
+            }
+        }
+    }
+
+    private static class Grid {
+        final HashMap<Long, List<Geofence>> cells = new HashMap<Long, List<Geofence>>();
+        final ArrayList<Geofence> large = new ArrayList<Geofence>();
+
+        void add(Geofence geofence){
+            long minLatitude = getCell(geofence.getMinLatitude());
+            long maxLatitude = getCell(geofence.getMaxLatitude());
+            long minLongitude = getCell(geofence.getMinLongitude());
+            long maxLongitude = getCell(geofence.getMaxLongitude());
+            List<Geofence> cell;
+            if ((maxLatitude - minLatitude + 1) * (maxLongitude - minLongitude + 1) > MAX_CELLS){
+                large.add(geofence);
+                return;
+            }
+            for (long latitude = minLatitude; latitude <= maxLatitude; latitude++){
+                for (long longitude = minLongitude; longitude <= maxLongitude; longitude++){
+                    Long key = getCellKey(latitude, longitude);
+                    cell = cells.get(key);
+                    if (cell==null){
+                        cell = new ArrayList<Geofence>(2);
+                        cells.put(key, cell);
+                    }
+                    cell.add(geofence);
+                }
+            }
+        }
+    }
+
+    /**
+     * A geofence transition and its JSON text, in the format of region transitions.
+     */
+    public static class Transition {
+        public final String regionId;
+        public final String json;
+
+        Transition(String regionId, String json){
+            this.regionId = regionId;
+            this.json = json;
+        }
+    }
+
+    /**
+     * A geofence the user is inside, with the time of entering.
+     */
+    private static class Inside {
+        Geofence geofence;
+        final long enterTime;
+        boolean dwelled = false;
+        long generation;
+
+        Inside(Geofence geofence, long enterTime){
+            this.geofence = geofence;
+            this.enterTime = enterTime;
+        }
+    }
+}
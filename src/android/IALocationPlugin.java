@@ -2,25 +2,15 @@ package com.ialocation.plugin;
 
 import android.Manifest;
 import android.content.pm.PackageManager;
-import android.graphics.Matrix;
-import android.graphics.Point;
-import android.graphics.PointF;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
-import android.widget.Toast;
 
 import com.indooratlas.android.sdk.IALocation;
-import com.indooratlas.android.sdk.IALocationManager;
-import com.indooratlas.android.sdk.IALocationRequest;
 import com.indooratlas.android.sdk.IARegion;
-import com.indooratlas.android.sdk.resources.IAFloorPlan;
-import com.indooratlas.android.sdk.resources.IALatLng;
 import com.indooratlas.android.sdk.resources.IAResourceManager;
-import com.indooratlas.android.sdk.resources.IAResult;
-import com.indooratlas.android.sdk.resources.IAResultCallback;
-import com.indooratlas.android.sdk.resources.IATask;
 
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaInterface;
@@ -31,9 +21,11 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
 
 /**
  * Cordova Plugin which implements IndoorAtlas positioning service.
@@ -42,10 +34,23 @@ import java.util.TimerTask;
 public class IALocationPlugin extends CordovaPlugin{
     private static final String TAG ="IALocationPlugin";
     private static final int PERMISSION_REQUEST = 101;
+    private static final String FLOOR_PLAN_CACHE_DIR = "indooratlas/floorplans";
+    private static final String FLOOR_PLAN_IMAGE_CACHE_DIR = "indooratlas/floorplan-images";
+    private static final String TRACE_DIR = "indooratlas/traces";
+    private static final String THREADING_MODE_PREFERENCE = "IndoorAtlasThreadingMode";
+    private static final String SESSION_LINGER_PREFERENCE = "IndoorAtlasSessionLingerMs";
+    private static final long DEFAULT_SESSION_LINGER_MS = 10000;
 
-    private IALocationManager mLocationManager;
+    private volatile LocationSource mLocationSource;
+    private PositioningHub.Client mIndoorAtlasSource;
     private IAResourceManager mResourceManager;
-    private IATask<IAFloorPlan> mFetchFloorplanTask;
+    private FloorPlanFetcher mFloorPlanFetcher;
+    private FloorPlanImageLoader mFloorPlanImageLoader;
+    private TraceRecorder mTraceRecorder;
+    private FloorPlanCache mFloorPlanCache;
+    private boolean mBackgroundServiceRunning = false;
+    private PositionHistoryStore mHistoryStore;
+    private final PluginMetrics mMetrics = new PluginMetrics();
     private String[] permissions = new String[]{
             Manifest.permission.CHANGE_WIFI_STATE,
             Manifest.permission.ACCESS_WIFI_STATE,
@@ -55,8 +60,11 @@ public class IALocationPlugin extends CordovaPlugin{
     };
     private CallbackContext mCbContext;
     private IndoorLocationListener mListener;
+    private PositioningWorker mWorker;
     private boolean mLocationServiceRunning=false;
-    private Timer mTimer;
+    private LocationRequestSpec mRequestSpec;
+    private ScheduledFuture<?> mPendingStop;
+    private boolean mReleasing = false;
     private String mApiKey, mApiSecret;
 
     /**
@@ -138,8 +146,8 @@ public class IALocationPlugin extends CordovaPlugin{
                 }
             }else if ("addWatch".equals(action)){
                 String watchId = args.getString(0);
-                addWatch(watchId,callbackContext);
-                if (!mLocationServiceRunning){
+                addWatch(watchId,args.optJSONObject(2),callbackContext);
+                if (!mLocationServiceRunning && getListener(this).hasActiveSubscribers()){
                     startPositioning(callbackContext);
                 }
             }else if ("clearWatch".equals(action)){
@@ -148,13 +156,7 @@ public class IALocationPlugin extends CordovaPlugin{
                 callbackContext.success();
 
             } else if ("getLocation".equals(action)){
-                if (mLocationServiceRunning){ //get last known location if service has started.
-                    getLastKnownLocation(callbackContext);
-                }
-                else{//Start service
-                    getListener(this).addCallback(callbackContext);
-                    startPositioning(callbackContext);
-                }
+                getLocation(args, callbackContext);
             } else if ("getPermissions".equals(action)){
                 if (hasPermisssion()){
                     callbackContext.success();
@@ -171,14 +173,60 @@ public class IALocationPlugin extends CordovaPlugin{
                 if (!mLocationServiceRunning){
                     startPositioning(callbackContext);
                 }
-                addRegionWatch(watchId,callbackContext);
+                addRegionWatch(watchId,args.optJSONObject(1),callbackContext);
             }else if ("clearRegionWatch".equals(action)){
                 String watchId = args.getString(0);
                 clearRegionWatch(watchId);
                 callbackContext.success();
+            }else if("addGeofences".equals(action)){
+                addGeofences(args.getJSONArray(0),callbackContext);
+            }else if("removeGeofences".equals(action)){
+                removeGeofences(args.optJSONArray(0));
+                callbackContext.success();
             }else if("fetchFloorplan".equals(action)){
                 String floorplanId = args.getString(0);
-                fetchFloorplan(floorplanId,callbackContext);
+                fetchFloorplan(floorplanId,args.optJSONObject(1),callbackContext);
+            }else if("coordinatesToPixels".equals(action)){
+                project(args.getString(0),args.getJSONArray(1),true,callbackContext);
+            }else if("pixelsToCoordinates".equals(action)){
+                project(args.getString(0),args.getJSONArray(1),false,callbackContext);
+            }else if("setPixelFloorPlan".equals(action)){
+                setPixelFloorPlan(args.isNull(0) ? null : args.getString(0),callbackContext);
+            }else if("fetchFloorPlanImage".equals(action)){
+                fetchFloorPlanImage(args,callbackContext);
+            }else if("startTrace".equals(action)){
+                startTrace(args.optJSONObject(0),callbackContext);
+            }else if("stopTrace".equals(action)){
+                stopTrace();
+                callbackContext.success();
+            }else if("exportTrace".equals(action)){
+                exportTrace(callbackContext);
+            }else if("startReplay".equals(action)){
+                startReplay(args.optJSONObject(0),callbackContext);
+            }else if("stopReplay".equals(action)){
+                stopReplay(callbackContext);
+            }else if("startBackgroundService".equals(action)){
+                startBackgroundService(args.optJSONObject(0),callbackContext);
+            }else if("stopBackgroundService".equals(action)){
+                stopBackgroundService();
+                callbackContext.success();
+            }else if("startHistory".equals(action)){
+                startHistory(args.optJSONObject(0));
+                callbackContext.success();
+            }else if("stopHistory".equals(action)){
+                stopHistory();
+                callbackContext.success();
+            }else if("getPositionHistory".equals(action)){
+                getPositionHistory(args,callbackContext);
+            }else if("exportHistory".equals(action)){
+                exportHistory(args.optJSONObject(0),callbackContext);
+            }else if("getMetrics".equals(action)){
+                JSONObject metrics = mMetrics.toJSON();
+                metrics.put("watches", getListener(this).getWatchMetrics());
+                callbackContext.success(metrics);
+            }else if("getWorkerStats".equals(action)){
+                getListener(this);
+                callbackContext.success(mWorker.getStats());
             }
 
         }
@@ -190,52 +238,112 @@ public class IALocationPlugin extends CordovaPlugin{
         return true;
     }
 
+    /**
+     * Called when the system is about to start resuming a previous activity. Watches switch
+     * to their background policies.
+     * @param multitasking
+     */
+    @Override
+    public void onPause(boolean multitasking) {
+        super.onPause(multitasking);
+        if (mListener!=null){
+            mListener.onPause();
+        }
+    }
+
+    /**
+     * Called when the activity will start interacting with the user. Fixes buffered in
+     * background are delivered and watches return to their foreground options.
+     * @param multitasking
+     */
+    @Override
+    public void onResume(boolean multitasking) {
+        super.onResume(multitasking);
+        if (mListener!=null){
+            mListener.onResume();
+        }
+    }
+
     /**
      * The final call you receive before your activity is destroyed.
      */
     @Override
     public void onDestroy() {
-        if (mLocationManager!=null){
-            mLocationManager.destroy();
+        cancelPendingStop();
+        if (mFloorPlanFetcher!=null){
+            mFloorPlanFetcher.cancelAll();
+        }
+        if (mFloorPlanImageLoader!=null){
+            mFloorPlanImageLoader.shutdown();
+        }
+        stopTrace();
+        stopBackgroundService();
+        shutdownHistory();
+        if (mLocationSource!=null && mLocationSource!=mIndoorAtlasSource){
+            mLocationSource.destroy();
+        }
+        if (mIndoorAtlasSource!=null){
+            mIndoorAtlasSource.destroy();
+        }
+        if (mWorker!=null){
+            mWorker.quit();
         }
         super.onDestroy();
     }
 
     /**
-     * Gets last known saved position from IndoorLocationListener
+     * Answers getCurrentPosition from the last known position if it is recent enough,
+     * otherwise waits for the next fix. Without maximumAge a running session answers with its
+     * last position, as before.
+     * @param args floor plan, timeout (negative for none), location request hints and maximumAge
+     *             (negative for any age, null if not given)
      * @param callbackContext
+     * @throws JSONException
      */
-    private void getLastKnownLocation(CallbackContext callbackContext)throws JSONException{
-        JSONObject locationData;
-        if (mListener!=null){
-            locationData = mListener.getLastKnownLocation();
-            if (locationData!=null){
-                callbackContext.success(locationData);
-            }
-            else{
-                callbackContext.error(PositionError.getErrorObject(PositionError.POSITION_UNAVAILABLE));
+    private void getLocation(JSONArray args, CallbackContext callbackContext) throws JSONException{
+        IndoorLocationListener listener = getListener(this);
+        long timeout = args.optLong(1, -1);
+        PluginResult lastKnownLocation = null;
+        if (args.isNull(3)){
+            if (mLocationServiceRunning){
+                lastKnownLocation = listener.getLastKnownLocation(-1);
             }
         }
         else{
-            callbackContext.error(PositionError.getErrorObject(PositionError.POSITION_UNAVAILABLE));
+            lastKnownLocation = listener.getLastKnownLocation(args.getLong(3));
+        }
+        if (lastKnownLocation!=null){
+            callbackContext.sendPluginResult(lastKnownLocation);
+            return;
+        }
+        if (timeout==0){
+            callbackContext.error(PositionError.getErrorObject(PositionError.TIMEOUT));
+            return;
+        }
+        if (!listener.addCallback(callbackContext, Math.max(0, timeout), args.optJSONObject(2)) && !mLocationServiceRunning){
+            startPositioning(callbackContext);
         }
     }
 
     /**
-     * Initialized location manger with given key and secret
+     * Attaches to the process-wide positioning hub, which initializes the IndoorAtlas managers
+     * with the given key and secret unless another WebView already did.
      * @param apiKey
      * @param apiSecret
      */
     private void initializeIndoorAtlas(final String apiKey, final String apiSecret){
-        if (mLocationManager==null){
+        if (mIndoorAtlasSource==null){
             cordova.getActivity().runOnUiThread(new Runnable() {
                 @Override
                 public void run() {
-                    Bundle bundle = new Bundle(2);
-                    bundle.putString(IALocationManager.EXTRA_API_KEY,apiKey);
-                    bundle.putString(IALocationManager.EXTRA_API_SECRET,apiSecret);
-                    mLocationManager = IALocationManager.create(cordova.getActivity().getApplicationContext(),bundle);
-                    mResourceManager = IAResourceManager.create(cordova.getActivity().getApplicationContext(),bundle);
+                    mIndoorAtlasSource = PositioningHub.attach(cordova.getActivity(),apiKey,apiSecret);
+                    if (mLocationSource==null){
+                        mLocationSource = mIndoorAtlasSource;
+                    }
+                    mResourceManager = mIndoorAtlasSource.getResourceManager();
+                    mFloorPlanCache = new FloorPlanCache(new File(cordova.getActivity().getFilesDir(), FLOOR_PLAN_CACHE_DIR));
+                    mFloorPlanFetcher = new FloorPlanFetcher(mResourceManager, mFloorPlanCache,
+                            cordova.getThreadPool(), mMetrics);
                     mApiKey = apiKey;
                     mApiSecret = apiSecret;
                 }
@@ -246,71 +354,12 @@ public class IALocationPlugin extends CordovaPlugin{
     /**
      * Starts tasks to fetch floorplan from IA
      * @param floorplanId
+     * @param options
      * @param callbackContext
      */
-    private void fetchFloorplan(String floorplanId, CallbackContext callbackContext){
-        if (mResourceManager!=null){
-            cancelPendingNetworkCalls();
-            mCbContext = callbackContext;
-            mFetchFloorplanTask = mResourceManager.fetchFloorPlanWithId(floorplanId);
-            mFetchFloorplanTask.setCallback(new IAResultCallback<IAFloorPlan>() {
-                @Override
-                public void onResult(IAResult<IAFloorPlan> iaResult) {
-                    IAFloorPlan floorPlan;
-                    JSONObject floorplanInfo;
-                    JSONArray latlngArray;
-                    floorPlan = iaResult.getResult();
-                    IALatLng iaLatLng;
-                    try{
-                        if (floorPlan!=null){
-                            floorplanInfo = new JSONObject();
-                            floorplanInfo.put("id",floorPlan.getId());
-                            floorplanInfo.put("name",floorPlan.getName());
-                            floorplanInfo.put("url",floorPlan.getUrl());
-                            floorplanInfo.put("floorLevel",floorPlan.getFloorLevel());
-                            floorplanInfo.put("bearing",floorPlan.getBearing());
-                            floorplanInfo.put("bitmapHeight",floorPlan.getBitmapHeight());
-                            floorplanInfo.put("bitmapWidth",floorPlan.getBitmapWidth());
-                            floorplanInfo.put("heightMeters",floorPlan.getHeightMeters());
-                            floorplanInfo.put("widthMeters",floorPlan.getWidthMeters());
-                            floorplanInfo.put("metersToPixels",floorPlan.getMetersToPixels());
-                            floorplanInfo.put("pixelsToMeters",floorPlan.getPixelsToMeters());
-
-                            latlngArray = new JSONArray();
-                            iaLatLng = floorPlan.getBottomLeft();
-                            latlngArray.put(iaLatLng.longitude);
-                            latlngArray.put(iaLatLng.latitude);
-                            floorplanInfo.put("bottomLeft",latlngArray);
-
-                            latlngArray = new JSONArray();
-                            iaLatLng = floorPlan.getCenter();
-                            latlngArray.put(iaLatLng.longitude);
-                            latlngArray.put(iaLatLng.latitude);
-                            floorplanInfo.put("center",latlngArray);
-
-                            latlngArray = new JSONArray();
-                            iaLatLng = floorPlan.getTopLeft();
-                            latlngArray.put(iaLatLng.longitude);
-                            latlngArray.put(iaLatLng.latitude);
-                            floorplanInfo.put("topLeft",latlngArray);
-
-                            latlngArray = new JSONArray();
-                            iaLatLng = floorPlan.getTopRight();
-                            latlngArray.put(iaLatLng.longitude);
-                            latlngArray.put(iaLatLng.latitude);
-                            floorplanInfo.put("topRight",latlngArray);
-                            mCbContext.success(floorplanInfo);
-                        }
-                        else{
-                            mCbContext.error(PositionError.getErrorObject(PositionError.FLOOR_PLAN_UNAVAILABLE));
-                        }
-                    }
-                    catch(JSONException ex){
-                        Log.e(TAG, ex.toString());
-                        throw new IllegalStateException(ex.getMessage());
-                    }
-                }
-            }, Looper.getMainLooper());
+    private void fetchFloorplan(String floorplanId, JSONObject options, CallbackContext callbackContext){
+        if (mFloorPlanFetcher!=null){
+            mFloorPlanFetcher.fetch(floorplanId, options, callbackContext);
         }
         else{
             callbackContext.error(PositionError.getErrorObject(PositionError.INITIALIZATION_ERROR));
@@ -318,31 +367,396 @@ public class IALocationPlugin extends CordovaPlugin{
     }
 
     /**
-     * Helper method to cancel current task if any.
+     * Passes the cached pixel projection of a floor plan to the callback, or sends an error if
+     * the floor plan has not been fetched. A floor plan in the memory cache is handled on the
+     * calling thread, otherwise the disk cache is read on the Cordova thread pool.
+     * @param floorplanId
+     * @param callbackContext
+     * @param callback
+     * @throws JSONException
+     */
+    private void withProjection(final String floorplanId, final CallbackContext callbackContext,
+                                final ProjectionCallback callback) throws JSONException{
+        final FloorPlanCache cache = mFloorPlanCache;
+        FloorPlanCache.Entry entry;
+        if (cache==null){
+            callbackContext.error(PositionError.getErrorObject(PositionError.INITIALIZATION_ERROR));
+            return;
+        }
+        entry = cache.getFromMemory(floorplanId);
+        if (entry!=null){
+            callback.onProjection(entry.getProjection());
+            return;
+        }
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                FloorPlanCache.Entry entry = cache.get(floorplanId);
+                if (entry==null){
+                    callbackContext.error(PositionError.getErrorObject(PositionError.FLOOR_PLAN_UNAVAILABLE,
+                            "Floor plan " + floorplanId + " has not been fetched"));
+                    return;
+                }
+                try{
+                    callback.onProjection(entry.getProjection());
+                }
+                catch(JSONException ex){
+                    Log.e(TAG, ex.toString());
+                    callbackContext.error(PositionError.getErrorObject(PositionError.UNSPECIFIED_ERROR,ex.toString()));
+                }
+            }
+        });
+    }
+
+    /**
+     * Converts a batch of points between coordinates and floor plan pixels in one call.
+     * @param floorplanId
+     * @param points flat [latitude, longitude, ...] or [x, y, ...] array
+     * @param toPixels true to convert coordinates to pixels, false for the other way around
+     * @param callbackContext
+     * @throws JSONException
      */
-    private void cancelPendingNetworkCalls() {
-        if (mFetchFloorplanTask!=null){
-            if (!mFetchFloorplanTask.isCancelled()){
-                mFetchFloorplanTask.cancel();
-                mCbContext.sendPluginResult(new PluginResult(PluginResult.Status.NO_RESULT));
+    private void project(String floorplanId, final JSONArray points, final boolean toPixels, final CallbackContext callbackContext) throws JSONException{
+        withProjection(floorplanId, callbackContext, new ProjectionCallback() {
+            @Override
+            public void onProjection(FloorPlanProjection projection) throws JSONException {
+                callbackContext.sendPluginResult(new JsonPluginResult(PluginResult.Status.OK,
+                        toPixels ? projection.toPixels(points) : projection.toCoordinates(points), false));
             }
+        });
+    }
+
+    /**
+     * Sets the floor plan whose pixel coordinates are added to delivered positions.
+     * @param floorplanId floor plan id, or null to stop adding pixel coordinates
+     * @param callbackContext
+     * @throws JSONException
+     */
+    private void setPixelFloorPlan(String floorplanId, final CallbackContext callbackContext) throws JSONException{
+        if (floorplanId==null){
+            getListener(this).setPixelProjection(null);
+            callbackContext.success();
+            return;
         }
+        withProjection(floorplanId, callbackContext, new ProjectionCallback() {
+            @Override
+            public void onProjection(FloorPlanProjection projection) {
+                getListener(IALocationPlugin.this).setPixelProjection(projection);
+                callbackContext.success();
+            }
+        });
+    }
+
+    /**
+     * Downloads a floor plan image, downsamples it to the requested size and returns a local
+     * file URI to it.
+     * @param args floor plan id, image url, bitmap width, bitmap height and max dimension
+     * @param callbackContext
+     * @throws JSONException
+     */
+    private void fetchFloorPlanImage(JSONArray args, final CallbackContext callbackContext) throws JSONException{
+        if (mFloorPlanImageLoader==null){
+            mFloorPlanImageLoader = new FloorPlanImageLoader(new File(cordova.getActivity().getCacheDir(), FLOOR_PLAN_IMAGE_CACHE_DIR));
+        }
+        mFloorPlanImageLoader.load(args.getString(0), args.getString(1), args.optInt(2, 0), args.optInt(3, 0),
+                args.optInt(4, 0), new FloorPlanImageLoader.Callback() {
+            @Override
+            public void onImage(String uri, int width, int height) {
+                try{
+                    JSONObject imageInfo = new JSONObject();
+                    imageInfo.put("uri",uri);
+                    imageInfo.put("width",width);
+                    imageInfo.put("height",height);
+                    callbackContext.success(imageInfo);
+                }
+                catch(JSONException ex){
+                    Log.e(TAG, ex.toString());
+                    callbackContext.error(PositionError.getErrorObject(PositionError.UNSPECIFIED_ERROR,ex.toString()));
+                }
+            }
+
+            @Override
+            public void onError(String message) {
+                callbackContext.error(PositionError.getErrorObject(PositionError.FLOOR_PLAN_UNAVAILABLE,message));
+            }
+        });
+    }
+
+    /**
+     * Starts recording fixes and region transitions into trace files. Does nothing if a trace
+     * is already being recorded.
+     * @param options maxFileBytes and maxFiles, may be null
+     * @param callbackContext
+     */
+    private synchronized void startTrace(JSONObject options, CallbackContext callbackContext){
+        long maxFileBytes = TraceRecorder.DEFAULT_MAX_FILE_BYTES;
+        int maxFiles = TraceRecorder.DEFAULT_MAX_FILES;
+        if (mTraceRecorder==null){
+            if (options!=null){
+                maxFileBytes = options.optLong("maxFileBytes", maxFileBytes);
+                maxFiles = options.optInt("maxFiles", maxFiles);
+            }
+            mTraceRecorder = new TraceRecorder(new File(cordova.getActivity().getFilesDir(), TRACE_DIR), maxFileBytes, maxFiles);
+            try{
+                mTraceRecorder.start();
+            }
+            catch(IOException ex){
+                Log.e(TAG, ex.toString());
+                mTraceRecorder = null;
+                callbackContext.error(PositionError.getErrorObject(PositionError.UNSPECIFIED_ERROR,ex.toString()));
+                return;
+            }
+            getListener(this).setTraceRecorder(mTraceRecorder);
+        }
+        callbackContext.success();
+    }
+
+    /**
+     * Stops recording the trace. The trace files are kept.
+     */
+    private synchronized void stopTrace(){
+        if (mTraceRecorder!=null){
+            if (mListener!=null){
+                mListener.setTraceRecorder(null);
+            }
+            mTraceRecorder.stop();
+            mTraceRecorder = null;
+        }
+    }
+
+    /**
+     * Returns the URIs of the trace files, oldest first. Records buffered by a running trace
+     * are written out first.
+     * @param callbackContext
+     */
+    private synchronized void exportTrace(CallbackContext callbackContext){
+        JSONArray uris = new JSONArray();
+        if (mTraceRecorder!=null){
+            try{
+                mTraceRecorder.flush();
+            }
+            catch(IOException ex){
+                Log.e(TAG, ex.toString());
+            }
+        }
+        for (File file : TraceRecorder.getTraceFiles(new File(cordova.getActivity().getFilesDir(), TRACE_DIR))){
+            uris.put(Uri.fromFile(file).toString());
+        }
+        callbackContext.success(uris);
+    }
+
+    /**
+     * Replaces IndoorAtlas positioning with the replay of recorded trace files. A running
+     * session continues from the trace. Works without initializeIndoorAtlas.
+     * @param options speed (multiplier of the recorded pace, 0 for as fast as possible), loop
+     *                and files (file URIs of trace files; the recorded trace if not given), may be null
+     * @param callbackContext
+     * @throws JSONException
+     */
+    private void startReplay(JSONObject options, CallbackContext callbackContext) throws JSONException{
+        final List<File> files = new ArrayList<File>();
+        JSONArray uris = options!=null ? options.optJSONArray("files") : null;
+        if (uris!=null){
+            for (int i = 0; i < uris.length(); i++){
+                files.add(new File(Uri.parse(uris.getString(i)).getPath()));
+            }
+        }
+        else{
+            files.addAll(TraceRecorder.getTraceFiles(new File(cordova.getActivity().getFilesDir(), TRACE_DIR)));
+        }
+        if (files.isEmpty()){
+            callbackContext.error(PositionError.getErrorObject(PositionError.UNSPECIFIED_ERROR,"No trace files to replay"));
+            return;
+        }
+        setLocationSource(new TraceReplaySource(files, options!=null ? options.optDouble("speed", 1) : 1,
+                options!=null && options.optBoolean("loop", false)), callbackContext);
+    }
+
+    /**
+     * Returns from trace replay to IndoorAtlas positioning.
+     * @param callbackContext
+     */
+    private void stopReplay(CallbackContext callbackContext){
+        setLocationSource(mIndoorAtlasSource, callbackContext);
+    }
+
+    /**
+     * Returns the position history store, opening it on first use.
+     * @return
+     */
+    private synchronized PositionHistoryStore getHistoryStore(){
+        if (mHistoryStore==null){
+            mHistoryStore = new PositionHistoryStore(cordova.getActivity().getApplicationContext());
+        }
+        return mHistoryStore;
+    }
+
+    /**
+     * Starts persisting every fix and region transition into the history store.
+     * @param options retentionDays (0 keeps history forever), may be null
+     */
+    private void startHistory(JSONObject options){
+        PositionHistoryStore store = getHistoryStore();
+        if (options!=null && options.has("retentionDays")){
+            store.setRetentionMs((long) (options.optDouble("retentionDays", 0) * 24 * 60 * 60 * 1000));
+        }
+        getListener(this).setHistoryStore(store);
+    }
+
+    /**
+     * Stops persisting fixes. The stored history is kept and can still be queried.
+     */
+    private void stopHistory(){
+        if (mListener!=null){
+            mListener.setHistoryStore(null);
+        }
+    }
+
+    private synchronized void shutdownHistory(){
+        stopHistory();
+        if (mHistoryStore!=null){
+            mHistoryStore.shutdown();
+            mHistoryStore = null;
+        }
+    }
+
+    /**
+     * Returns stored fixes in a time range, oldest first. Runs on the Cordova thread pool.
+     * @param args from and to in milliseconds since epoch, floor plan id or null, and limit
+     *             (0 for no limit)
+     * @param callbackContext
+     * @throws JSONException
+     */
+    private void getPositionHistory(JSONArray args, final CallbackContext callbackContext) throws JSONException{
+        final long from = args.optLong(0, 0);
+        final long to = args.isNull(1) ? Long.MAX_VALUE : args.getLong(1);
+        final String floorPlanId = args.isNull(2) ? null : args.getString(2);
+        final int limit = args.optInt(3, 0);
+        final PositionHistoryStore store = getHistoryStore();
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                try{
+                    callbackContext.sendPluginResult(new JsonPluginResult(PluginResult.Status.OK,
+                            store.getPositions(from, to, floorPlanId, limit), false));
+                }
+                catch(RuntimeException ex){
+                    Log.e(TAG, ex.toString());
+                    callbackContext.error(PositionError.getErrorObject(PositionError.UNSPECIFIED_ERROR,ex.toString()));
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns one page of stored fixes and region transitions. Runs on the Cordova thread pool.
+     * @param options from, to, pageSize and the cursor of the previous page, may be null
+     * @param callbackContext
+     */
+    private void exportHistory(JSONObject options, final CallbackContext callbackContext){
+        final long from = options!=null ? options.optLong("from", 0) : 0;
+        final long to = options!=null ? options.optLong("to", Long.MAX_VALUE) : Long.MAX_VALUE;
+        final int pageSize = options!=null ? options.optInt("pageSize", 1000) : 1000;
+        final String cursor = options!=null && !options.isNull("cursor") ? options.optString("cursor", null) : null;
+        final PositionHistoryStore store = getHistoryStore();
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                try{
+                    callbackContext.sendPluginResult(new JsonPluginResult(PluginResult.Status.OK,
+                            store.export(from, to, pageSize, cursor), false));
+                }
+                catch(RuntimeException ex){
+                    Log.e(TAG, ex.toString());
+                    callbackContext.error(PositionError.getErrorObject(PositionError.UNSPECIFIED_ERROR,ex.toString()));
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts the foreground service and keeps positioning in background, buffering fixes and
+     * region transitions natively. The buffer is delivered to the callback in one batch each
+     * time the app returns to foreground. Must be called while the app is in foreground.
+     * @param options notificationTitle, notificationText, bufferSize, fastestInterval and
+     *                smallestDisplacement, may be null
+     * @param callbackContext
+     */
+    private synchronized void startBackgroundService(JSONObject options, CallbackContext callbackContext){
+        if (mLocationSource==null){
+            callbackContext.error(PositionError.getErrorObject(PositionError.INITIALIZATION_ERROR));
+            return;
+        }
+        PositioningService.start(cordova.getActivity(),
+                options!=null ? options.optString("notificationTitle", null) : null,
+                options!=null ? options.optString("notificationText", null) : null);
+        mBackgroundServiceRunning = true;
+        getListener(this).setBackgroundTrack(new BackgroundTrack(callbackContext, options));
+    }
+
+    /**
+     * Stops the foreground service. Anything buffered is delivered first.
+     */
+    private synchronized void stopBackgroundService(){
+        if (!mBackgroundServiceRunning){
+            return;
+        }
+        if (mListener!=null){
+            mListener.setBackgroundTrack(null);
+        }
+        PositioningService.stop(cordova.getActivity());
+        mBackgroundServiceRunning = false;
+    }
+
+    /**
+     * Switches the source of fixes, moving a running session over to the new source. Without
+     * a source, i.e. when stopping replay before initializeIndoorAtlas, the session ends.
+     * @param locationSource
+     * @param callbackContext called when the switch is done
+     */
+    private void setLocationSource(final LocationSource locationSource, final CallbackContext callbackContext){
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                boolean running = mLocationServiceRunning;
+                if (locationSource == mLocationSource){
+                    callbackContext.success();
+                    return;
+                }
+                if (running){
+                    removeLocationUpdates();
+                }
+                if (mLocationSource!=null && mLocationSource!=mIndoorAtlasSource){
+                    mLocationSource.destroy();
+                }
+                mLocationSource = locationSource;
+                if (running && mLocationSource!=null){
+                    applyLocationRequest();
+                }
+                callbackContext.success();
+            }
+        });
     }
 
     /**
      * Adds a new callback to the IndoorAtlas location listener
      * @param watchId
+     * @param options
      * @param callbackContext
      */
-    private void addWatch(String watchId, CallbackContext callbackContext){
-        getListener(this).addWatch(watchId,callbackContext);
+    private void addWatch(String watchId, JSONObject options, CallbackContext callbackContext){
+        getListener(this).addWatch(watchId,callbackContext,options);
     }
 
     /**
      * Adds a new callback to the IndoorAtlas IARegion.Listener
+     * @param watchId
+     * @param options region filters (regionIds, regionTypes), may be null
+     * @param callbackContext
+     * @throws JSONException
      */
-    private void addRegionWatch(String watchId, CallbackContext callbackContext){
-        getListener(this).addRegionWatch(watchId,callbackContext);
+    private void addRegionWatch(String watchId, JSONObject options, CallbackContext callbackContext) throws JSONException{
+        getListener(this).addRegionWatch(watchId,callbackContext,options);
     }
     /**
      * Removes callback from IndoorAtlas location listener
@@ -360,6 +774,43 @@ public class IALocationPlugin extends CordovaPlugin{
         getListener(this).clearRegionWatch(watchId);
     }
 
+    /**
+     * Registers polygon geofences. Transitions are reported to watchRegion callbacks.
+     * @param geofences geofence definitions, see Geofence
+     * @param callbackContext
+     */
+    private void addGeofences(JSONArray geofences, CallbackContext callbackContext){
+        ArrayList<Geofence> parsed = new ArrayList<Geofence>();
+        try{
+            for (int i = 0; i < geofences.length(); i++){
+                parsed.add(new Geofence(geofences.getJSONObject(i)));
+            }
+        }
+        catch(JSONException ex){
+            callbackContext.error(PositionError.getErrorObject(PositionError.UNSPECIFIED_ERROR, ex.getMessage()));
+            return;
+        }
+        getListener(this).getGeofenceEngine().add(parsed);
+        callbackContext.success();
+    }
+
+    /**
+     * Removes geofences.
+     * @param ids ids of the geofences to remove, or null to remove all
+     * @throws JSONException
+     */
+    private void removeGeofences(JSONArray ids) throws JSONException{
+        ArrayList<String> removed = new ArrayList<String>();
+        if (ids==null){
+            getListener(this).getGeofenceEngine().clear();
+            return;
+        }
+        for (int i = 0; i < ids.length(); i++){
+            removed.add(ids.getString(i));
+        }
+        getListener(this).getGeofenceEngine().remove(removed);
+    }
+
     /**
      * Resets IndoorAtlas positioning session (NOT BEING USED)
      */
@@ -411,7 +862,7 @@ public class IALocationPlugin extends CordovaPlugin{
      */
     private void setPosition(final JSONArray args,final CallbackContext callbackContext) throws Exception{
         final IALocation.Builder builder;
-        if (mLocationManager!=null){
+        if (mLocationSource!=null){
             if (validatePositionArguments(args)){
                 builder = new IALocation.Builder();
                 if (!args.getString(0).trim().equalsIgnoreCase("")){
@@ -426,7 +877,7 @@ public class IALocationPlugin extends CordovaPlugin{
                     public void run() {
                         IALocation iaLocation;
                         iaLocation = builder.build();
-                        mLocationManager.setLocation(iaLocation);
+                        mLocationSource.setLocation(iaLocation);
                         callbackContext.success();
                     }
                 });
@@ -442,7 +893,7 @@ public class IALocationPlugin extends CordovaPlugin{
      * @param callbackContext
      */
     protected void startPositioning(CallbackContext callbackContext){
-        if (mLocationManager!=null){
+        if (mLocationSource!=null){
             startPositioning();
         }
         else{
@@ -454,32 +905,142 @@ public class IALocationPlugin extends CordovaPlugin{
      * Starts IndoorAtlas positioning session
      */
     protected void startPositioning(){
+        cancelPendingStop();
         cordova.getActivity().runOnUiThread(new Runnable() {
             @Override
             public void run() {
-                mLocationManager.requestLocationUpdates(IALocationRequest.create(), getListener(IALocationPlugin.this));
-                mLocationManager.registerRegionListener(getListener(IALocationPlugin.this));
-                mLocationServiceRunning=true;
+                applyLocationRequest();
             }
         });
     }
 
+    /**
+     * Called when subscribers have changed while some of them still need positioning.
+     * Re-issues the location request of a running session if the combined requirements of the
+     * subscribers have changed, e.g. when a high rate watch is cleared, and restarts a session
+     * which was stopped in background or at the end of a linger period.
+     */
+    protected void updateLocationRequest(){
+        cancelPendingStop();
+        if (mLocationSource!=null){
+            cordova.getActivity().runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    if (mLocationServiceRunning || getListener(IALocationPlugin.this).hasActiveSubscribers()){
+                        applyLocationRequest();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Starts the session with the combined location request of the subscribers, or re-issues
+     * the request of a running session if it has changed. Runs on the UI thread.
+     */
+    private void applyLocationRequest(){
+        LocationRequestSpec requestSpec = getListener(this).getRequestSpec();
+        if (!mLocationServiceRunning){
+            mRequestSpec = requestSpec;
+            // Fixes arrive on the source's thread and reach the worker through its counted queue
+            mLocationSource.requestLocationUpdates(requestSpec.toLocationRequest(), getListener(this), null);
+            mLocationSource.registerRegionListener(getListener(this));
+            mLocationServiceRunning=true;
+            mMetrics.onSessionStarted(SystemClock.elapsedRealtime());
+        }
+        else if (!requestSpec.equals(mRequestSpec)){
+            Log.d(TAG, "Location request changed: " + requestSpec);
+            mRequestSpec = requestSpec;
+            // Requesting again with the same listener replaces the previous request
+            mLocationSource.requestLocationUpdates(requestSpec.toLocationRequest(), getListener(this), null);
+        }
+    }
+
+    /**
+     * Called when the last subscriber is gone. The session is kept running for the linger
+     * period set by the IndoorAtlasSessionLingerMs preference, so that a subscriber arriving
+     * soon after gets a fix from the warm session instead of waiting for a cold start.
+     * The linger period runs from the first call after the last subscriber left; further calls
+     * do not restart it until a subscriber arrives.
+     */
+    protected void releasePositioning(){
+        long lingerMs = preferences.getInteger(SESSION_LINGER_PREFERENCE, (int) DEFAULT_SESSION_LINGER_MS);
+        if (lingerMs <= 0){
+            stopPositioning();
+            return;
+        }
+        synchronized (this){
+            if (mReleasing){
+                return;
+            }
+            mReleasing = true;
+            mPendingStop = TimeoutScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    stopIfIdle();
+                }
+            }, lingerMs);
+        }
+    }
+
+    /**
+     * Stops the session at the end of the linger period unless a subscriber has arrived.
+     */
+    private void stopIfIdle(){
+        synchronized (this){
+            mPendingStop = null;
+        }
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if (mLocationServiceRunning && !getListener(IALocationPlugin.this).hasActiveSubscribers()){
+                    Log.d(TAG, "Session linger period over, stopping positioning");
+                    removeLocationUpdates();
+                }
+            }
+        });
+    }
+
+    /**
+     * Cancels a pending linger stop, if any, so that the next release starts a new linger period.
+     */
+    private synchronized void cancelPendingStop(){
+        mReleasing = false;
+        if (mPendingStop!=null){
+            mPendingStop.cancel(false);
+            mPendingStop = null;
+        }
+    }
+
     /**
      * Stops IndoorAtlas positioning session
      */
     protected void stopPositioning(){
-        if (mLocationManager!=null){
+        cancelPendingStop();
+        if (mLocationSource!=null){
             cordova.getActivity().runOnUiThread(new Runnable() {
                 @Override
                 public void run() {
-                    mLocationManager.unregisterRegionListener(getListener(IALocationPlugin.this));
-                    mLocationManager.removeLocationUpdates(getListener(IALocationPlugin.this));
-                    mLocationServiceRunning=false;
+                    removeLocationUpdates();
                 }
             });
         }
     }
 
+    /**
+     * Ends the running session, if any. Runs on the UI thread.
+     */
+    private void removeLocationUpdates(){
+        if (!mLocationServiceRunning){
+            // e.g. an idle app going to background, which is not a session stop
+            return;
+        }
+        mLocationSource.unregisterRegionListener(getListener(this));
+        mLocationSource.removeLocationUpdates(getListener(this));
+        mLocationServiceRunning=false;
+        mMetrics.onSessionStopped();
+    }
+
     /**
      * Checks if application manifest contains IndoorAtlas key and secret(NOT BEING USED).
      * @return
@@ -498,72 +1059,23 @@ public class IALocationPlugin extends CordovaPlugin{
     }
 
     /**
-     * Returns IndoorLocationListener class object
+     * Returns IndoorLocationListener class object. The positioning worker is created together
+     * with it, using the threading mode set by the IndoorAtlasThreadingMode preference.
      * @param plugin
      * @return
      */
-    private IndoorLocationListener getListener(IALocationPlugin plugin){
+    private synchronized IndoorLocationListener getListener(IALocationPlugin plugin){
         if (mListener == null){
-            mListener = new IndoorLocationListener(plugin);
+            mWorker = new PositioningWorker(preferences.getString(THREADING_MODE_PREFERENCE, PositioningWorker.THREADING_MODE_WORKER));
+            mListener = new IndoorLocationListener(plugin, mWorker, mMetrics);
         }
         return mListener;
     }
 
     /**
-     * Cancels the timeout timer used in getCurrentPosition and addWatch methods.
+     * Receives the projection looked up by withProjection.
      */
-    public void cancelTimer() {
-        if (mTimer != null) {
-            mTimer.cancel();
-            mTimer.purge();
-            mTimer = null;
-        }
+    private interface ProjectionCallback {
+        void onProjection(FloorPlanProjection projection) throws JSONException;
     }
-
-    /**
-     * Creates timeout timer used in getCurrentPosition and addWatch methods.
-     * @param callbackContext
-     * @param timeout
-     */
-    private void scheduleTimer(CallbackContext callbackContext,int timeout){
-        if (mTimer==null){
-            mTimer = new Timer();
-        }
-        mTimer.schedule(new TimeoutTask(callbackContext, getListener(this)),timeout);
-    }
-    /**
-     * TimerTask which implements timeout logic when fetching position.
-     */
-    private class TimeoutTask extends TimerTask{
-        private CallbackContext mCallbackContext = null;
-        private IndoorLocationListener mListener = null;
-
-        public TimeoutTask(CallbackContext callbackContext, IndoorLocationListener listener){
-            mCallbackContext = callbackContext;
-            mListener = listener;
-        }
-        @Override
-        public void run() {
-            PluginResult pluginResult;
-            JSONObject errorObject;
-            for (CallbackContext callbackContext : mListener.getCallbacks()) {
-                if (mCallbackContext == callbackContext) {
-                    callbackContext.error(PositionError.getErrorObject(PositionError.TIMEOUT));
-                    mListener.getCallbacks().remove(callbackContext);
-                    break;
-                }
-            }
-            Set<String> keys= mListener.getWatches().keySet();
-            for(String key: keys){
-                if (mCallbackContext == mListener.getWatches().get(key)){
-                    mListener.getWatches().get(key).error(PositionError.getErrorObject(PositionError.TIMEOUT));
-                    mListener.getWatches().remove(key);
-                }
-            }
-            if (mListener.size()==0){
-                stopPositioning();
-            }
-        }
-    }
-
-}
+}
\ No newline at end of file
@@ -0,0 +1,54 @@
+package com.ialocation.plugin;
+
+import android.os.Looper;
+
+import com.indooratlas.android.sdk.IALocation;
+import com.indooratlas.android.sdk.IALocationListener;
+import com.indooratlas.android.sdk.IALocationManager;
+import com.indooratlas.android.sdk.IALocationRequest;
+import com.indooratlas.android.sdk.IARegion;
+
+/**
+ * LocationSource which positions with the IndoorAtlas SDK.
+ */
+public class IndoorAtlasLocationSource implements LocationSource {
+    private final IALocationManager locationManager;
+
+    /**
+     * The constructor
+     * @param locationManager
+     */
+    public IndoorAtlasLocationSource(IALocationManager locationManager){
+        this.locationManager = locationManager;
+    }
+
+    @Override
+    public void requestLocationUpdates(IALocationRequest request, IALocationListener listener, Looper looper){
+        locationManager.requestLocationUpdates(request, listener, looper);
+    }
+
+    @Override
+    public void removeLocationUpdates(IALocationListener listener){
+        locationManager.removeLocationUpdates(listener);
+    }
+
+    @Override
+    public void registerRegionListener(IARegion.Listener listener){
+        locationManager.registerRegionListener(listener);
+    }
+
+    @Override
+    public void unregisterRegionListener(IARegion.Listener listener){
+        locationManager.unregisterRegionListener(listener);
+    }
+
+    @Override
+    public void setLocation(IALocation location){
+        locationManager.setLocation(location);
+    }
+
+    @Override
+    public void destroy(){
+        locationManager.destroy();
+    }
+}
@@ -1,6 +1,9 @@
 package com.ialocation.plugin;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.indooratlas.android.sdk.IALocation;
@@ -13,87 +16,124 @@ import org.apache.cordova.PluginResult;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.lang.reflect.Array;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
 
 /**
  * Handles events from IALocationListener and IARegion.Listener and relays them to Javascript callbacks.
+ * Callbacks are kept in SubscriberRegistry collections, which may be modified from any thread
+ * while fixes are fanned out. Fixes and region events are processed on the PositioningWorker
+ * thread.
+ * While the app is in background each watch follows its background policy, and the
+ * positioning session is stopped if no subscriber needs fixes.
  */
 public class IndoorLocationListener implements IALocationListener, IARegion.Listener {
     private static final String TAG = "IndoorLocationListener";
 
-    private static final int TRANSITION_TYPE_UNKNOWN = 0;
-    private static final int TRANSITION_TYPE_ENTER = 1;
-    private static final int TRANSITION_TYPE_EXIT = 2;
+    static final int TRANSITION_TYPE_UNKNOWN = 0;
+    static final int TRANSITION_TYPE_ENTER = 1;
+    static final int TRANSITION_TYPE_EXIT = 2;
+    static final int TRANSITION_TYPE_DWELL = 3;
 
-    private HashMap<String, CallbackContext> watches = new HashMap<String, CallbackContext>();
-    private HashMap<String, CallbackContext> regionWatches = new HashMap<String, CallbackContext>();
-    private ArrayList<CallbackContext> mCallbacks = new ArrayList<CallbackContext>();
+    private final SubscriberRegistry<PositionWatch> watches = new SubscriberRegistry<PositionWatch>();
+    private final SubscriberRegistry<RegionWatch> regionWatches = new SubscriberRegistry<RegionWatch>();
+    private RegionWatchIndex regionWatchIndex = new RegionWatchIndex(regionWatches.values());
+    private final SubscriberRegistry<PositionRequest> mCallbacks = new SubscriberRegistry<PositionRequest>();
     private CallbackContext mCallbackContext;
-    private IALocation lastKnownLocation=null;
+    private volatile LastKnownLocation lastKnownLocation=null;
+    private final LocationEncoder encoder = new LocationEncoder();
+    private final BinaryLocationEncoder binaryEncoder = new BinaryLocationEncoder();
+    private final PositioningWorker worker;
+    private final Handler handler;
+    private final PluginMetrics metrics;
+    private final GeofenceEngine geofences = new GeofenceEngine();
+    private final ArrayList<GeofenceEngine.Transition> geofenceEvents = new ArrayList<GeofenceEngine.Transition>();
     private IALocationPlugin owner;
+    private volatile boolean background = false;
+    private volatile TraceRecorder traceRecorder = null;
+    private volatile FloorPlanProjection pixelProjection = null;
+    private volatile BackgroundTrack backgroundTrack = null;
+    private volatile PositionHistoryStore historyStore = null;
 
     /**
      * The constructor
      * @param iaLocationPlugin
+     * @param worker thread which processes fixes and region events
+     * @param metrics
      */
-    public IndoorLocationListener(IALocationPlugin iaLocationPlugin){
+    public IndoorLocationListener(IALocationPlugin iaLocationPlugin, PositioningWorker worker, PluginMetrics metrics){
         this.owner = iaLocationPlugin;
+        this.worker = worker;
+        this.handler = worker.getHandler();
+        this.metrics = metrics;
     }
 
     /**
-     * Returns watchPosition callback collection.
-     * @return
-     */
-    public HashMap<String, CallbackContext> getWatches(){
-        return watches;
-    }
-
-    /**
-     * Returns getCurrentPosition callback collection
-     * @return
+     * Returns a getCurrentPosition result for the last known user position. The position is
+     * encoded once per fix and the same result answers every request.
+     * @param maximumAge the oldest acceptable position in milliseconds, or a negative value for any age
+     * @return the result, or null if there is no recent enough position
      */
-    public ArrayList<CallbackContext> getCallbacks(){
-        return mCallbacks;
-    }
-
-    /**
-     * Returns a JSON object the last known user position
-     * @return
-     */
-    public JSONObject getLastKnownLocation(){
-        if (lastKnownLocation!=null){
-            JSONObject locationData = getLocationJSONFromIALocation(lastKnownLocation);
-            return locationData;
+    public PluginResult getLastKnownLocation(long maximumAge){
+        LastKnownLocation location = lastKnownLocation;
+        if (location==null){
+            return null;
+        }
+        if (maximumAge >= 0 && System.currentTimeMillis() - location.time > maximumAge){
+            return null;
         }
-        return null;
+        return location.result;
     }
 
     /**
      * Adds watchPosition JS callback to the collection
      * @param watchId
      * @param callbackContext
+     * @param options watchPosition options (minIntervalMs, minDistanceMeters, maxAccuracyMeters, timeout,
+     *                fastestInterval, smallestDisplacement), may be null
      */
-    public void addWatch(String watchId, CallbackContext callbackContext){
-        watches.put(watchId, callbackContext);
+    public void addWatch(String watchId, CallbackContext callbackContext, JSONObject options){
+        PositionWatch watch = new PositionWatch(watchId, callbackContext, options);
+        watches.put(watchId, watch);
+        scheduleTimeout(watch);
+        onSubscribersChanged();
     }
 
     /**
      * Adds watchRegion JS callback to the collection
      * @param watchId
      * @param callbackContext
+     * @param options watchRegion options (regionIds, regionTypes), may be null
+     * @throws JSONException
      */
-    public void addRegionWatch(String watchId, CallbackContext callbackContext){
-        regionWatches.put(watchId, callbackContext);
+    public void addRegionWatch(String watchId, CallbackContext callbackContext, JSONObject options) throws JSONException{
+        regionWatches.put(watchId, new RegionWatch(watchId, callbackContext, options));
     }
 
     /**
-     * Adds getCurrentPosition JS callback to the collection
+     * Adds getCurrentPosition JS callback to the collection. All waiting requests are answered
+     * by the same next fix. A request with the same hints as one already waiting joins it
+     * without touching the positioning session.
      * @param callbackContext
+     * @param timeoutMs time to wait for a fix before failing with TIMEOUT, or 0 to wait forever
+     * @param hints location request hints, may be null
+     * @return true if the request joined requests already waiting for a fix
      */
-    public void addCallback(CallbackContext callbackContext){
-        mCallbacks.add(callbackContext);
+    public boolean addCallback(CallbackContext callbackContext, long timeoutMs, JSONObject hints){
+        PositionRequest request = new PositionRequest(callbackContext, timeoutMs, hints);
+        boolean joined = false;
+        for (PositionRequest pending : mCallbacks.values()){
+            if (pending.getRequestSpec().equals(request.getRequestSpec())){
+                joined = true;
+                break;
+            }
+        }
+        mCallbacks.put(request.getId(), request);
+        scheduleTimeout(request);
+        if (!joined){
+            onSubscribersChanged();
+        }
+        return joined;
     }
 
     /**
@@ -105,93 +145,285 @@ public class IndoorLocationListener implements IALocationListener, IARegion.List
     }
 
     /**
-     * Removes a callback from watchPosition callback collection
-     * @param watchId
+     * Returns true if any subscriber needs the positioning session. Watches which are paused in
+     * background do not count while the app is in background.
+     * @return
      */
-    public void clearWatch(String watchId){
-        if (watches.containsKey(watchId)){
-            watches.remove(watchId);
+    public boolean hasActiveSubscribers(){
+        if (!mCallbacks.isEmpty() || !regionWatches.isEmpty() || (background && backgroundTrack!=null)){
+            return true;
         }
-        if (size()==0){
-            owner.stopPositioning();
+        for (PositionWatch watch : watches.values()){
+            if (!background || !watch.isPausedInBackground()){
+                return true;
+            }
         }
+        return false;
     }
 
     /**
-     * Removes a callback from watchRegion callback collection
-     * @param watchId
+     * Returns the most demanding combination of the location request hints of all position
+     * subscribers.
+     * @return
      */
-    public void clearRegionWatch(String watchId){
-        if (regionWatches.containsKey(watchId)){
-            regionWatches.remove(watchId);
+    public LocationRequestSpec getRequestSpec(){
+        ArrayList<LocationRequestSpec> specs = new ArrayList<LocationRequestSpec>();
+        LocationRequestSpec spec;
+        for (PositionWatch watch : watches.values()){
+            spec = watch.getRequestSpec(background);
+            if (spec!=null){
+                specs.add(spec);
+            }
+        }
+        for (PositionRequest request : mCallbacks.values()){
+            specs.add(request.getRequestSpec());
         }
-        if (size()==0){
-            owner.stopPositioning();
+        BackgroundTrack track = backgroundTrack;
+        if (background && track!=null){
+            specs.add(track.getRequestSpec());
         }
+        return LocationRequestSpec.combine(specs);
     }
 
     /**
-     * Returns a JSON object which contains IARegion info.
-     * @param iaRegion
-     * @param transitionType
-     * @return
+     * Releases the positioning session when the last subscriber is gone, otherwise lets the
+     * plugin adjust the location request to the remaining subscribers.
      */
-    private JSONObject getRegionJSONFromIARegion(IARegion iaRegion, int transitionType){
-        try{
-            JSONObject regionData=new JSONObject();
-            regionData.put("regionId",iaRegion.getId());
-            regionData.put("timestamp",iaRegion.getTimestamp());
-            regionData.put("regionType",iaRegion.getType());
-            regionData.put("transitionType",transitionType);
-            return regionData;
+    private void onSubscribersChanged(){
+        if (!hasActiveSubscribers()){
+            owner.releasePositioning();
         }
-        catch(JSONException ex){
-            Log.e(TAG, ex.toString());
-            throw new IllegalStateException(ex.getMessage());
+        else{
+            owner.updateLocationRequest();
+        }
+    }
+
+    /**
+     * Returns the delivered and dropped fix counts of each watch, keyed by watch id.
+     * @return
+     * @throws JSONException
+     */
+    public JSONObject getWatchMetrics() throws JSONException{
+        JSONObject watchMetrics = new JSONObject();
+        for (PositionWatch watch : watches.values()){
+            JSONObject counts = new JSONObject();
+            counts.put("fixesDelivered", watch.getDeliveredFixes());
+            counts.put("fixesDropped", watch.getDroppedFixes());
+            watchMetrics.put(watch.getWatchId(), counts);
         }
+        return watchMetrics;
     }
 
     /**
-     * Returns a JSON object which contains IALocation info.
+     * Returns the engine which evaluates fixes against geofences registered from JS.
+     * @return
+     */
+    public GeofenceEngine getGeofenceEngine(){
+        return geofences;
+    }
+
+    /**
+     * Sets the floor plan whose pixel coordinates are added to each fix on it, or null to stop
+     * adding pixel coordinates.
+     * @param projection
+     */
+    public void setPixelProjection(FloorPlanProjection projection){
+        pixelProjection = projection;
+    }
+
+    /**
+     * Returns the pixel projection for a fix: fixes on another floor plan get none.
      * @param iaLocation
      * @return
      */
-    private JSONObject getLocationJSONFromIALocation(IALocation iaLocation){
-        try{
-            JSONObject locationData,regionData;
-            locationData = new JSONObject();
-            locationData.put("accuracy",iaLocation.getAccuracy());
-            locationData.put("altitude",iaLocation.getAltitude());
-            locationData.put("heading",iaLocation.getBearing());
-            locationData.put("flr",iaLocation.getFloorLevel());
-            locationData.put("latitude",iaLocation.getLatitude());
-            locationData.put("longitude",iaLocation.getLongitude());
-            if (iaLocation.getRegion()!=null){
-                regionData = getRegionJSONFromIARegion(iaLocation.getRegion(), TRANSITION_TYPE_UNKNOWN);
-                locationData.put("region",regionData);
+    private FloorPlanProjection getPixelProjection(IALocation iaLocation){
+        FloorPlanProjection projection = pixelProjection;
+        IARegion region = iaLocation.getRegion();
+        if (projection!=null && region!=null && region.getType() == IARegion.TYPE_FLOOR_PLAN
+                && !projection.getFloorPlanId().equals(region.getId())){
+            return null;
+        }
+        return projection;
+    }
+
+    /**
+     * Sets the store which fixes and region transitions are persisted into, or null to stop
+     * persisting them.
+     * @param historyStore
+     */
+    public void setHistoryStore(PositionHistoryStore historyStore){
+        this.historyStore = historyStore;
+    }
+
+    /**
+     * Sets the recorder which fixes and region transitions are recorded into, or null to stop
+     * recording.
+     * @param traceRecorder
+     */
+    public void setTraceRecorder(TraceRecorder traceRecorder){
+        this.traceRecorder = traceRecorder;
+    }
+
+    /**
+     * Sets the native subscriber which keeps positioning in background and buffers its fixes
+     * and region transitions, or null to stop. Anything still buffered by the previous track is
+     * delivered to it first.
+     * @param track
+     */
+    public void setBackgroundTrack(final BackgroundTrack track){
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                BackgroundTrack previous = backgroundTrack;
+                if (previous!=null){
+                    flushBackgroundTrack(previous, true);
+                }
+                backgroundTrack = track;
+                onSubscribersChanged();
             }
-            locationData.put("velocity",iaLocation.toLocation().getSpeed());
-            locationData.put("timestamp",iaLocation.getTime());
-            return locationData;
+        });
+    }
+
+    /**
+     * Delivers the positions and region transitions buffered by a background track in one batch.
+     * The last flush of a track which is being removed releases its callback, with an empty
+     * result if nothing was buffered.
+     * @param track
+     * @param last true if the track is being removed
+     */
+    private void flushBackgroundTrack(BackgroundTrack track, boolean last){
+        String batchJson = track.drain();
+        if (batchJson!=null){
+            track.getCallbackContext().sendPluginResult(new JsonPluginResult(PluginResult.Status.OK, batchJson, !last));
         }
-        catch(JSONException ex){
-            Log.e(TAG, ex.toString());
-            throw new IllegalStateException(ex.getMessage());
+        else if (last){
+            track.getCallbackContext().sendPluginResult(new PluginResult(PluginResult.Status.NO_RESULT));
         }
     }
 
+    /**
+     * Called when the app goes to background. Watch timeouts are suspended, watches follow
+     * their background policies and positioning stops if only paused watches are left.
+     */
+    public void onPause(){
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                background = true;
+                for (PositionWatch watch : watches.values()){
+                    watch.cancelTimeout();
+                    if (watch.isBufferedInBackground()){
+                        // Buffered fixes are kept until resume instead of being sent by batch latency
+                        handler.removeCallbacksAndMessages(watch);
+                    }
+                }
+                if (hasActiveSubscribers()){
+                    owner.updateLocationRequest();
+                }
+                else{
+                    // No point keeping the session warm for a UI nobody sees
+                    owner.stopPositioning();
+                }
+            }
+        });
+    }
+
+    /**
+     * Called when the app returns to foreground. Fixes buffered in background are delivered in
+     * one batch per watch, watch timeouts restart and positioning resumes at the foreground rate,
+     * or is released if only a background track was using it.
+     */
+    public void onResume(){
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!background){
+                    return;
+                }
+                background = false;
+                for (PositionWatch watch : watches.values()){
+                    if (watch.isBufferedInBackground()){
+                        flushBatch(watch);
+                    }
+                    scheduleTimeout(watch);
+                }
+                if (backgroundTrack!=null){
+                    flushBackgroundTrack(backgroundTrack, false);
+                }
+                // A background track alone no longer needs the session
+                onSubscribersChanged();
+            }
+        });
+    }
+
+    /**
+     * Removes a callback from watchPosition callback collection
+     * @param watchId
+     */
+    public void clearWatch(String watchId){
+        PositionWatch watch = watches.remove(watchId);
+        if (watch!=null){
+            watch.cancelTimeout();
+            handler.removeCallbacksAndMessages(watch);
+            if (watch.getSmoother()!=null){
+                handler.removeCallbacksAndMessages(watch.getSmoother());
+            }
+        }
+        onSubscribersChanged();
+    }
+
+    /**
+     * Removes a callback from watchRegion callback collection
+     * @param watchId
+     */
+    public void clearRegionWatch(String watchId){
+        regionWatches.remove(watchId);
+        onSubscribersChanged();
+    }
+
     /**
      * Called when the location has changed.
      * @param iaLocation
      */
     @Override
-    public void onLocationChanged(IALocation iaLocation){
-        JSONObject locationData;
+    public void onLocationChanged(final IALocation iaLocation){
+        if (!worker.isCurrentThread()){
+            worker.execute(new Runnable() {
+                @Override
+                public void run() {
+                    onLocationChanged(iaLocation);
+                }
+            });
+            return;
+        }
         Log.w(TAG, "Got location");
-        locationData = getLocationJSONFromIALocation(iaLocation);
-        lastKnownLocation = iaLocation;
-        sendResult(locationData);
-        owner.cancelTimer();
+        long startTime = System.nanoTime();
+        long encodedTime;
+        metrics.onFixReceived(SystemClock.elapsedRealtime());
+        TraceRecorder recorder = traceRecorder;
+        PositionHistoryStore history = historyStore;
+        if (recorder!=null){
+            recorder.recordLocation(iaLocation);
+        }
+        if (history!=null){
+            history.addPosition(iaLocation);
+        }
+        encodedTime = System.nanoTime();
+        String locationJson = encoder.encodeLocation(iaLocation, getPixelProjection(iaLocation));
+        LastKnownLocation location = new LastKnownLocation(iaLocation.getTime(), locationJson);
+        metrics.serializationMicros.record((System.nanoTime() - encodedTime) / 1000);
+        lastKnownLocation = location;
+        sendResult(iaLocation, locationJson, location.result);
+        BackgroundTrack track = backgroundTrack;
+        if (background && track!=null){
+            track.addPosition(locationJson);
+        }
+        sendGeofenceResults(iaLocation);
+        long elapsedMicros = (System.nanoTime() - startTime) / 1000;
+        metrics.onLocationChangedMicros.record(elapsedMicros);
+        if (Looper.myLooper() == Looper.getMainLooper()){
+            metrics.mainThreadMicros.addAndGet(elapsedMicros);
+        }
     }
 
     /**
@@ -199,9 +431,13 @@ public class IndoorLocationListener implements IALocationListener, IARegion.List
      * @param iaRegion
      */
     @Override
-    public void onEnterRegion(IARegion iaRegion){
-        JSONObject regionData = getRegionJSONFromIARegion(iaRegion,TRANSITION_TYPE_ENTER);
-        sendRegionResult(regionData);
+    public void onEnterRegion(final IARegion iaRegion){
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                sendRegionResult(iaRegion,TRANSITION_TYPE_ENTER);
+            }
+        });
     }
 
     /**
@@ -209,45 +445,292 @@ public class IndoorLocationListener implements IALocationListener, IARegion.List
      * @param iaRegion
      */
     @Override
-    public void onExitRegion(IARegion iaRegion) {
-        JSONObject regionData = getRegionJSONFromIARegion(iaRegion,TRANSITION_TYPE_EXIT);
-        sendRegionResult(regionData);
+    public void onExitRegion(final IARegion iaRegion) {
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                sendRegionResult(iaRegion,TRANSITION_TYPE_EXIT);
+            }
+        });
     }
 
     /**
      * Invokes JS callback from watchRegion callback collection.
-     * @param regionData
+     * Only watches whose filters match the region are looked up and the transition is encoded
+     * once, only if some watch wants it, and shared by all callbacks.
+     * @param iaRegion
+     * @param transitionType
+     */
+    private void sendRegionResult(IARegion iaRegion, int transitionType){
+        TraceRecorder recorder = traceRecorder;
+        PositionHistoryStore history = historyStore;
+        if (recorder!=null){
+            recorder.recordRegion(iaRegion, transitionType);
+        }
+        if (history!=null){
+            history.addRegion(iaRegion, transitionType);
+        }
+        PluginResult pluginResult = null;
+        BackgroundTrack track = backgroundTrack;
+        if (background && track!=null){
+            track.addRegion(encoder.encodeRegion(iaRegion, transitionType));
+        }
+        for (RegionWatch watch : getRegionWatchIndex().getWatches(iaRegion.getId())) {
+            if (!watch.acceptsType(iaRegion.getType())){
+                continue;
+            }
+            if (pluginResult==null){
+                pluginResult = new JsonPluginResult(PluginResult.Status.OK, encoder.encodeRegion(iaRegion, transitionType), true);
+            }
+            watch.getCallbackContext().sendPluginResult(pluginResult);
+        }
+    }
+
+    /**
+     * Returns the index of the current region watches, rebuilding it if watches were added or
+     * removed since it was built. Only called on the positioning thread.
+     * @return
+     */
+    private RegionWatchIndex getRegionWatchIndex(){
+        List<RegionWatch> current = regionWatches.values();
+        if (!regionWatchIndex.isBuiltFrom(current)){
+            regionWatchIndex = new RegionWatchIndex(current);
+        }
+        return regionWatchIndex;
+    }
+
+    /**
+     * Evaluates a fix against the registered geofences and invokes the watchRegion callbacks
+     * with each resulting transition. Fixes which cause no transition cost no bridge traffic.
+     * @param iaLocation
      */
-    private void sendRegionResult(JSONObject regionData){
+    private void sendGeofenceResults(IALocation iaLocation){
         PluginResult pluginResult;
-        for (CallbackContext callbackContext : regionWatches.values()) {
-            pluginResult = new PluginResult(PluginResult.Status.OK, regionData);
-            pluginResult.setKeepCallback(true);
-            callbackContext.sendPluginResult(pluginResult);
+        BackgroundTrack track = backgroundTrack;
+        geofences.evaluate(iaLocation, geofenceEvents);
+        for (GeofenceEngine.Transition transition : geofenceEvents){
+            pluginResult = null;
+            if (background && track!=null){
+                track.addRegion(transition.json);
+            }
+            for (RegionWatch watch : getRegionWatchIndex().getWatches(transition.regionId)) {
+                if (!watch.acceptsType(GeofenceEngine.REGION_TYPE_GEOFENCE)){
+                    continue;
+                }
+                if (pluginResult==null){
+                    pluginResult = new JsonPluginResult(PluginResult.Status.OK, transition.json, true);
+                }
+                watch.getCallbackContext().sendPluginResult(pluginResult);
+            }
         }
+        geofenceEvents.clear();
     }
 
     /**
      * Invokes JS callback from watchPosition callback collection.
-     * @param locationData
+     * Watches whose options reject the fix are skipped. The fix is encoded only once per format
+     * and the same payload is shared by all callbacks.
+     * @param iaLocation
+     * @param locationJson
+     * @param requestResult the getCurrentPosition result of the fix
      */
-    private void sendResult(JSONObject locationData){
+    private void sendResult(IALocation iaLocation, String locationJson, PluginResult requestResult){
+        PluginResult pluginResult = null;
+        PluginResult binaryResult = null;
+        List<PositionRequest> requests = mCallbacks.removeAll();
+        for (PositionRequest request : requests) {
+            request.cancelTimeout();
+            request.getCallbackContext().sendPluginResult(requestResult);
+        }
+        metrics.fixesDelivered.addAndGet(requests.size());
+
+        for (PositionWatch watch : watches.values()) {
+            if (background && watch.isPausedInBackground()){
+                watch.onDropped();
+                metrics.fixesDropped.incrementAndGet();
+                continue;
+            }
+            if (watch.getSmoother()!=null){
+                watch.getSmoother().update(iaLocation);
+                startInterpolation(watch);
+            }
+            if (!watch.accept(iaLocation, background)){
+                metrics.fixesDropped.incrementAndGet();
+                continue;
+            }
+            metrics.fixesDelivered.incrementAndGet();
+            if (background && watch.isBufferedInBackground()){
+                watch.enqueueInBackground(iaLocation, locationJson);
+                continue;
+            }
+            if (!background){
+                scheduleTimeout(watch);
+            }
+            if (watch.isBatched()){
+                enqueueBatch(watch, iaLocation, locationJson);
+                continue;
+            }
+            if (watch.isBinary()){
+                if (binaryResult==null){
+                    binaryResult = new PluginResult(PluginResult.Status.OK, binaryEncoder.encode(iaLocation));
+                    binaryResult.setKeepCallback(true);
+                }
+                watch.getCallbackContext().sendPluginResult(binaryResult);
+                continue;
+            }
+            if (pluginResult==null){
+                pluginResult = new JsonPluginResult(PluginResult.Status.OK, locationJson, true);
+            }
+            watch.getCallbackContext().sendPluginResult(pluginResult);
+        }
+        if (!requests.isEmpty()){
+            // Only answered getCurrentPosition requests change the subscribers on the fix path
+            onSubscribersChanged();
+        }
+    }
+
+    /**
+     * Starts the timeout of a getCurrentPosition request, if it has one.
+     * @param request
+     */
+    private void scheduleTimeout(final PositionRequest request){
+        if (request.getTimeoutMs() <= 0){
+            return;
+        }
+        request.setTimeout(TimeoutScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                onTimeout(request);
+            }
+        }, request.getTimeoutMs()));
+    }
+
+    /**
+     * Restarts the timeout of a watch, if it has one. Called whenever the watch accepts a fix.
+     * @param watch
+     */
+    private void scheduleTimeout(final PositionWatch watch){
+        if (watch.getTimeoutMs() <= 0 || background){
+            return;
+        }
+        watch.setTimeout(TimeoutScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                onTimeout(watch);
+            }
+        }, watch.getTimeoutMs()));
+    }
+
+    /**
+     * Fails a getCurrentPosition request which did not get a fix in time. Runs on the timeout
+     * thread; if a fix is being delivered at the same time, only one of them removes the request.
+     * @param request
+     */
+    private void onTimeout(PositionRequest request){
+        if (mCallbacks.remove(request.getId(), request)){
+            request.getCallbackContext().error(PositionError.getErrorObject(PositionError.TIMEOUT));
+            onSubscribersChanged();
+        }
+    }
+
+    /**
+     * Reports TIMEOUT to a watch which did not accept a fix in time. The watch stays active and
+     * its timeout restarts with the next accepted fix. Runs on the timeout thread.
+     * @param watch
+     */
+    private void onTimeout(PositionWatch watch){
         PluginResult pluginResult;
-        for (CallbackContext callbackContext : mCallbacks) {
-            pluginResult = new PluginResult(PluginResult.Status.OK, locationData);
-            pluginResult.setKeepCallback(false);
-            callbackContext.sendPluginResult(pluginResult);
+        if (watches.get(watch.getWatchId()) == watch){
+            pluginResult = new PluginResult(PluginResult.Status.ERROR, PositionError.getErrorObject(PositionError.TIMEOUT));
+            pluginResult.setKeepCallback(true);
+            watch.getCallbackContext().sendPluginResult(pluginResult);
         }
+    }
 
-        for (CallbackContext callbackContext : watches.values()) {
-            pluginResult = new PluginResult(PluginResult.Status.OK, locationData);
+    /**
+     * Buffers a fix for a batched watch. The batch is sent when it is full, or when the
+     * first buffered fix has waited for the watch's maximum latency.
+     * @param watch
+     * @param iaLocation
+     * @param locationJson
+     */
+    private void enqueueBatch(final PositionWatch watch, IALocation iaLocation, String locationJson){
+        if (watch.enqueue(iaLocation, locationJson)){
+            handler.postAtTime(new Runnable() {
+                @Override
+                public void run() {
+                    flushBatch(watch);
+                }
+            }, watch, SystemClock.uptimeMillis() + watch.getBatchMaxLatencyMs());
+        }
+        if (watch.isBatchFull()){
+            flushBatch(watch);
+        }
+    }
+
+    /**
+     * Sends buffered fixes of a batched watch as one JSON array or binary message.
+     * @param watch
+     */
+    private void flushBatch(PositionWatch watch){
+        PluginResult pluginResult;
+        handler.removeCallbacksAndMessages(watch);
+        if (watches.get(watch.getWatchId()) != watch){
+            return;
+        }
+        if (watch.isBinary()){
+            byte[] batchMessage = watch.drainBinaryBatch(binaryEncoder);
+            if (batchMessage==null){
+                return;
+            }
+            pluginResult = new PluginResult(PluginResult.Status.OK, batchMessage);
             pluginResult.setKeepCallback(true);
-            callbackContext.sendPluginResult(pluginResult);
         }
-        mCallbacks.clear();
-        if (size()==0){
-            owner.stopPositioning();
+        else{
+            String batchJson = watch.drainBatch();
+            if (batchJson==null){
+                return;
+            }
+            pluginResult = new JsonPluginResult(PluginResult.Status.OK, batchJson, true);
+        }
+        watch.getCallbackContext().sendPluginResult(pluginResult);
+    }
+
+    /**
+     * Starts delivering predicted positions to a watch with interpolation, unless already
+     * doing so. Nothing is predicted while the app is in background.
+     * @param watch
+     */
+    private void startInterpolation(PositionWatch watch){
+        if (background || watch.getSmoother().isRunning()){
+            return;
         }
+        watch.getSmoother().setRunning(true);
+        sendInterpolation(watch);
+    }
+
+    /**
+     * Sends the next batch of predicted positions and schedules the one after it. Stops when
+     * the watch is cleared, the app goes to background or fixes stop coming.
+     * @param watch
+     */
+    private void sendInterpolation(final PositionWatch watch){
+        final PositionSmoother smoother = watch.getSmoother();
+        String batchJson = null;
+        if (!background && watches.get(watch.getWatchId()) == watch){
+            batchJson = smoother.predictBatch(System.currentTimeMillis());
+        }
+        if (batchJson==null){
+            smoother.setRunning(false);
+            return;
+        }
+        watch.getCallbackContext().sendPluginResult(new JsonPluginResult(PluginResult.Status.OK, batchJson, true));
+        handler.postAtTime(new Runnable() {
+            @Override
+            public void run() {
+                sendInterpolation(watch);
+            }
+        }, smoother, SystemClock.uptimeMillis() + smoother.getBatchMs());
     }
 
     /**
@@ -255,15 +738,13 @@ public class IndoorLocationListener implements IALocationListener, IARegion.List
      */
     private void handleServiceInteruption(){
         PluginResult pluginResult;
-        for (CallbackContext callbackContext : watches.values()) {
-            pluginResult = new PluginResult(PluginResult.Status.ERROR, PositionError.getErrorObject(PositionError.POSITION_UNAVAILABLE));
-            pluginResult.setKeepCallback(true);
-            callbackContext.sendPluginResult(pluginResult);
+        pluginResult = new PluginResult(PluginResult.Status.ERROR, PositionError.getErrorObject(PositionError.POSITION_UNAVAILABLE));
+        pluginResult.setKeepCallback(true);
+        for (PositionWatch watch : watches.values()) {
+            watch.getCallbackContext().sendPluginResult(pluginResult);
         }
-        for (CallbackContext callbackContext : regionWatches.values()) {
-            pluginResult = new PluginResult(PluginResult.Status.ERROR, PositionError.getErrorObject(PositionError.POSITION_UNAVAILABLE));
-            pluginResult.setKeepCallback(true);
-            callbackContext.sendPluginResult(pluginResult);
+        for (RegionWatch watch : regionWatches.values()) {
+            watch.getCallbackContext().sendPluginResult(pluginResult);
         }
     }
 
@@ -274,7 +755,16 @@ public class IndoorLocationListener implements IALocationListener, IARegion.List
      * @param bundle
      */
     @Override
-    public void onStatusChanged(String provider, int status, Bundle bundle) {
+    public void onStatusChanged(final String provider, final int status, final Bundle bundle) {
+        if (!worker.isCurrentThread()){
+            worker.execute(new Runnable() {
+                @Override
+                public void run() {
+                    onStatusChanged(provider, status, bundle);
+                }
+            });
+            return;
+        }
         switch (status){
             case IALocationManager.STATUS_AVAILABLE:
                 Log.d(TAG, provider);
@@ -293,4 +783,17 @@ public class IndoorLocationListener implements IALocationListener, IARegion.List
                 break;
         }
     }
+
+    /**
+     * The last fix together with its encoded getCurrentPosition result.
+     */
+    private static class LastKnownLocation {
+        final long time;
+        final PluginResult result;
+
+        LastKnownLocation(long time, String locationJson){
+            this.time = time;
+            this.result = new JsonPluginResult(PluginResult.Status.OK, locationJson, false);
+        }
+    }
 }
@@ -0,0 +1,34 @@
+package com.ialocation.plugin;
+
+import org.apache.cordova.PluginResult;
+
+/**
+ * PluginResult which carries JSON text that has already been encoded.
+ * Unlike PluginResult(Status, JSONObject) it does not stringify the message again, so the same
+ * result can be sent to any number of callbacks which share the keepCallback setting.
+ */
+public class JsonPluginResult extends PluginResult {
+    private final String encodedJson;
+
+    /**
+     * The constructor
+     * @param status
+     * @param encodedJson
+     * @param keepCallback
+     */
+    public JsonPluginResult(Status status, String encodedJson, boolean keepCallback){
+        super(status, encodedJson);
+        this.encodedJson = encodedJson;
+        setKeepCallback(keepCallback);
+    }
+
+    @Override
+    public int getMessageType(){
+        return MESSAGE_TYPE_JSON;
+    }
+
+    @Override
+    public String getMessage(){
+        return encodedJson;
+    }
+}
@@ -0,0 +1,169 @@
+package com.ialocation.plugin;
+
+import com.indooratlas.android.sdk.IALocation;
+import com.indooratlas.android.sdk.IARegion;
+
+/**
+ * Encodes IALocation and IARegion info into the JSON text which is sent to Javascript.
+ * The encoder reuses a single buffer, so an instance must only be used from one thread.
+ */
+public class LocationEncoder {
+    private final StringBuilder buffer = new StringBuilder(256);
+    private final double[] pixel = new double[2];
+
+    /**
+     * Returns the JSON text of a position.
+     * @param iaLocation
+     * @return
+     */
+    public String encodeLocation(IALocation iaLocation){
+        buffer.setLength(0);
+        appendLocation(buffer, iaLocation, null);
+        return buffer.toString();
+    }
+
+    /**
+     * Returns the JSON text of a position with its pixel coordinates on a floor plan.
+     * @param iaLocation
+     * @param projection projection of the floor plan, or null for no pixel coordinates
+     * @return
+     */
+    public String encodeLocation(IALocation iaLocation, FloorPlanProjection projection){
+        buffer.setLength(0);
+        appendLocation(buffer, iaLocation, projection);
+        return buffer.toString();
+    }
+
+    /**
+     * Returns the JSON text of a region transition.
+     * @param iaRegion
+     * @param transitionType
+     * @return
+     */
+    public String encodeRegion(IARegion iaRegion, int transitionType){
+        buffer.setLength(0);
+        appendRegion(buffer, iaRegion, transitionType);
+        return buffer.toString();
+    }
+
+    /**
+     * Appends a JSON object which contains IALocation info.
+     * @param sb
+     * @param iaLocation
+     * @param projection projection of the floor plan whose pixel coordinates are added as x
+     *                   and y, or null
+     */
+    public void appendLocation(StringBuilder sb, IALocation iaLocation, FloorPlanProjection projection){
+        sb.append("{\"accuracy\":");
+        appendNumber(sb, iaLocation.getAccuracy());
+        sb.append(",\"altitude\":");
+        appendNumber(sb, iaLocation.getAltitude());
+        sb.append(",\"heading\":");
+        appendNumber(sb, iaLocation.getBearing());
+        sb.append(",\"flr\":").append(iaLocation.getFloorLevel());
+        sb.append(",\"latitude\":");
+        appendNumber(sb, iaLocation.getLatitude());
+        sb.append(",\"longitude\":");
+        appendNumber(sb, iaLocation.getLongitude());
+        if (iaLocation.getRegion()!=null){
+            sb.append(",\"region\":");
+            appendRegion(sb, iaLocation.getRegion(), IndoorLocationListener.TRANSITION_TYPE_UNKNOWN);
+        }
+        sb.append(",\"velocity\":");
+        appendNumber(sb, iaLocation.toLocation().getSpeed());
+        if (projection!=null){
+            projection.toPixel(iaLocation.getLatitude(), iaLocation.getLongitude(), pixel);
+            sb.append(",\"x\":");
+            appendNumber(sb, pixel[0]);
+            sb.append(",\"y\":");
+            appendNumber(sb, pixel[1]);
+        }
+        sb.append(",\"timestamp\":").append(iaLocation.getTime());
+        sb.append('}');
+    }
+
+    /**
+     * Appends a JSON object which contains IARegion info.
+     * @param sb
+     * @param iaRegion
+     * @param transitionType
+     */
+    public static void appendRegion(StringBuilder sb, IARegion iaRegion, int transitionType){
+        sb.append("{\"regionId\":");
+        appendString(sb, iaRegion.getId());
+        sb.append(",\"timestamp\":").append(iaRegion.getTimestamp());
+        sb.append(",\"regionType\":").append(iaRegion.getType());
+        sb.append(",\"transitionType\":").append(transitionType);
+        sb.append('}');
+    }
+
+    /**
+     * Appends a number, or null if the value has no JSON representation.
+     * @param sb
+     * @param value
+     */
+    public static void appendNumber(StringBuilder sb, double value){
+        if (Double.isNaN(value) || Double.isInfinite(value)){
+            sb.append("null");
+        }
+        else{
+            sb.append(value);
+        }
+    }
+
+    /**
+     * Appends a number, or null if the value has no JSON representation.
+     * @param sb
+     * @param value
+     */
+    public static void appendNumber(StringBuilder sb, float value){
+        if (Float.isNaN(value) || Float.isInfinite(value)){
+            sb.append("null");
+        }
+        else{
+            sb.append(value);
+        }
+    }
+
+    /**
+     * Appends a quoted and escaped JSON string, or null.
+     * @param sb
+     * @param value
+     */
+    public static void appendString(StringBuilder sb, String value){
+        if (value==null){
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            switch (c){
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029'){
+                        sb.append(String.format("\\u%04x", (int) c));
+                    }
+                    else{
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+        sb.append('"');
+    }
+}
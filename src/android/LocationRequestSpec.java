@@ -0,0 +1,84 @@
+package com.ialocation.plugin;
+
+import com.indooratlas.android.sdk.IALocationRequest;
+
+import java.util.List;
+
+/**
+ * Location update requirements of the positioning session. Each subscriber may pass a
+ * fastestInterval and smallestDisplacement hint, and the session runs with the most
+ * demanding combination of the hints of all live subscribers. Zero means that the subscriber
+ * wants updates as often as IndoorAtlas provides them.
+ */
+public class LocationRequestSpec {
+    public static final LocationRequestSpec DEFAULT = new LocationRequestSpec(0, 0);
+
+    private final long fastestInterval;
+    private final float smallestDisplacement;
+
+    public LocationRequestSpec(long fastestInterval, float smallestDisplacement){
+        this.fastestInterval = Math.max(0, fastestInterval);
+        this.smallestDisplacement = Math.max(0, smallestDisplacement);
+    }
+
+    public long getFastestInterval(){
+        return fastestInterval;
+    }
+
+    public float getSmallestDisplacement(){
+        return smallestDisplacement;
+    }
+
+    /**
+     * Returns the most demanding combination of the given requirements, or DEFAULT if the
+     * list is empty.
+     * @param specs
+     * @return
+     */
+    public static LocationRequestSpec combine(List<LocationRequestSpec> specs){
+        long fastestInterval = Long.MAX_VALUE;
+        float smallestDisplacement = Float.MAX_VALUE;
+        if (specs.isEmpty()){
+            return DEFAULT;
+        }
+        for (LocationRequestSpec spec : specs){
+            fastestInterval = Math.min(fastestInterval, spec.fastestInterval);
+            smallestDisplacement = Math.min(smallestDisplacement, spec.smallestDisplacement);
+        }
+        return new LocationRequestSpec(fastestInterval, smallestDisplacement);
+    }
+
+    /**
+     * Returns an IALocationRequest with these requirements.
+     * @return
+     */
+    public IALocationRequest toLocationRequest(){
+        IALocationRequest request = IALocationRequest.create();
+        if (fastestInterval > 0){
+            request.setFastestInterval(fastestInterval);
+        }
+        if (smallestDisplacement > 0){
+            request.setSmallestDisplacement(smallestDisplacement);
+        }
+        return request;
+    }
+
+    @Override
+    public boolean equals(Object o){
+        if (!(o instanceof LocationRequestSpec)){
+            return false;
+        }
+        LocationRequestSpec other = (LocationRequestSpec) o;
+        return fastestInterval == other.fastestInterval && smallestDisplacement == other.smallestDisplacement;
+    }
+
+    @Override
+    public int hashCode(){
+        return 31 * (int) (fastestInterval ^ (fastestInterval >>> 32)) + Float.floatToIntBits(smallestDisplacement);
+    }
+
+    @Override
+    public String toString(){
+        return "fastestInterval=" + fastestInterval + " smallestDisplacement=" + smallestDisplacement;
+    }
+}
@@ -0,0 +1,39 @@
+package com.ialocation.plugin;
+
+import android.os.Looper;
+
+import com.indooratlas.android.sdk.IALocation;
+import com.indooratlas.android.sdk.IALocationListener;
+import com.indooratlas.android.sdk.IALocationRequest;
+import com.indooratlas.android.sdk.IARegion;
+
+/**
+ * Source of fixes and region transitions for the plugin. The plugin talks to IndoorAtlas only
+ * through this interface, so positioning can be fed from something else than the SDK, such as
+ * a recorded trace.
+ * The methods mirror IALocationManager and are called on the UI thread.
+ */
+public interface LocationSource {
+    /**
+     * Starts delivering fixes to the listener on the looper's thread, or on the source's own
+     * thread if looper is null, or replaces the request of a listener which is already
+     * registered.
+     */
+    void requestLocationUpdates(IALocationRequest request, IALocationListener listener, Looper looper);
+
+    void removeLocationUpdates(IALocationListener listener);
+
+    void registerRegionListener(IARegion.Listener listener);
+
+    void unregisterRegionListener(IARegion.Listener listener);
+
+    /**
+     * Sets an explicit position.
+     */
+    void setLocation(IALocation location);
+
+    /**
+     * Releases the source. It must not be used afterwards.
+     */
+    void destroy();
+}
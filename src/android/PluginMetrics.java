@@ -0,0 +1,157 @@
+package com.ialocation.plugin;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and histograms of the plugin's work, returned to JS by getMetrics.
+ * Recording only updates atomic primitives, so it allocates nothing and is safe from any
+ * thread. Histograms have fixed power of two buckets; percentiles are reported as the upper
+ * bound of the bucket they fall in.
+ */
+public class PluginMetrics {
+    public final AtomicLong fixesReceived = new AtomicLong();
+    public final AtomicLong fixesDelivered = new AtomicLong();
+    public final AtomicLong fixesDropped = new AtomicLong();
+    public final AtomicLong sessionStarts = new AtomicLong();
+    public final AtomicLong sessionStops = new AtomicLong();
+    public final AtomicLong floorPlanCacheHits = new AtomicLong();
+    public final AtomicLong floorPlanCacheMisses = new AtomicLong();
+    public final AtomicLong mainThreadMicros = new AtomicLong();
+    public final Histogram serializationMicros = new Histogram();
+    public final Histogram onLocationChangedMicros = new Histogram();
+    public final Histogram timeToFirstFixMillis = new Histogram();
+    public final Histogram floorPlanFetchMillis = new Histogram();
+
+    private final AtomicBoolean awaitingFirstFix = new AtomicBoolean(false);
+    private volatile long sessionStartTime;
+
+    /**
+     * Records the start of a positioning session.
+     * @param startTime start time from SystemClock.elapsedRealtime
+     */
+    public void onSessionStarted(long startTime){
+        sessionStarts.incrementAndGet();
+        sessionStartTime = startTime;
+        awaitingFirstFix.set(true);
+    }
+
+    public void onSessionStopped(){
+        sessionStops.incrementAndGet();
+        awaitingFirstFix.set(false);
+    }
+
+    /**
+     * Records a received fix, and the time to first fix if it is the first of the session.
+     * @param receiveTime receive time from SystemClock.elapsedRealtime
+     */
+    public void onFixReceived(long receiveTime){
+        fixesReceived.incrementAndGet();
+        if (awaitingFirstFix.compareAndSet(true, false)){
+            timeToFirstFixMillis.record(receiveTime - sessionStartTime);
+        }
+    }
+
+    /**
+     * Returns all metrics as JSON. Watch counters are added by the caller.
+     * @return
+     * @throws JSONException
+     */
+    public JSONObject toJSON() throws JSONException{
+        JSONObject metrics = new JSONObject();
+        long hits = floorPlanCacheHits.get();
+        long misses = floorPlanCacheMisses.get();
+        metrics.put("fixesReceived", fixesReceived.get());
+        metrics.put("fixesDelivered", fixesDelivered.get());
+        metrics.put("fixesDropped", fixesDropped.get());
+        metrics.put("sessionStarts", sessionStarts.get());
+        metrics.put("sessionStops", sessionStops.get());
+        metrics.put("mainThreadMicros", mainThreadMicros.get());
+        metrics.put("floorPlanCacheHits", hits);
+        metrics.put("floorPlanCacheMisses", misses);
+        metrics.put("floorPlanCacheHitRate", hits + misses > 0 ? (double) hits / (hits + misses) : 0);
+        metrics.put("serializationMicros", serializationMicros.toJSON());
+        metrics.put("onLocationChangedMicros", onLocationChangedMicros.toJSON());
+        metrics.put("timeToFirstFixMillis", timeToFirstFixMillis.toJSON());
+        metrics.put("floorPlanFetchMillis", floorPlanFetchMillis.toJSON());
+        return metrics;
+    }
+
+    /**
+     * Histogram of non-negative values in power of two buckets: bucket 0 counts the value 0,
+     * bucket i counts values from 2^(i-1) to 2^i - 1.
+     */
+    public static class Histogram {
+        private static final int BUCKETS = 40;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        public void record(long value){
+            long current;
+            if (value < 0){
+                value = 0;
+            }
+            buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value)));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            current = max.get();
+            while (value > current && !max.compareAndSet(current, value)){
+                current = max.get();
+            }
+        }
+
+        /**
+         * Returns count, mean, max and estimated percentiles, plus the non-empty buckets as
+         * [upper bound, count] pairs.
+         * @return
+         * @throws JSONException
+         */
+        public JSONObject toJSON() throws JSONException{
+            JSONObject histogram = new JSONObject();
+            JSONArray bucketCounts = new JSONArray();
+            long total = count.get();
+            long bucketCount;
+            histogram.put("count", total);
+            histogram.put("mean", total > 0 ? (double) sum.get() / total : 0);
+            histogram.put("max", max.get());
+            histogram.put("p50", getPercentile(0.5));
+            histogram.put("p90", getPercentile(0.9));
+            histogram.put("p99", getPercentile(0.99));
+            for (int i = 0; i < BUCKETS; i++){
+                bucketCount = buckets.get(i);
+                if (bucketCount > 0){
+                    bucketCounts.put(new JSONArray().put(getUpperBound(i)).put(bucketCount));
+                }
+            }
+            histogram.put("buckets", bucketCounts);
+            return histogram;
+        }
+
+        private long getPercentile(double percentile){
+            long total = count.get();
+            long seen = 0;
+            if (total == 0){
+                return 0;
+            }
+            for (int i = 0; i < BUCKETS; i++){
+                seen += buckets.get(i);
+                if (seen >= Math.ceil(total * percentile)){
+                    return Math.min(getUpperBound(i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        private static long getUpperBound(int bucket){
+            return bucket == 0 ? 0 : (1L << bucket) - 1;
+        }
+    }
+}
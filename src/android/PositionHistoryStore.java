@@ -0,0 +1,439 @@
+package com.ialocation.plugin;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.indooratlas.android.sdk.IALocation;
+import com.indooratlas.android.sdk.IARegion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SQLite store of every fix and region transition, indexed by time for range queries.
+ * Rows are collected in memory on the positioning thread and written in one transaction on
+ * the store's own thread every FLUSH_DELAY_MS, or sooner when FLUSH_ROWS rows are waiting, so
+ * a fix costs no disk I/O on the fix path. Queries first write out the waiting rows so they
+ * see every fix up to the call. Rows older than the retention period are deleted while
+ * flushing.
+ * Query methods do disk I/O and must not be called on the UI thread.
+ */
+public class PositionHistoryStore extends SQLiteOpenHelper {
+    private static final String TAG = "PositionHistoryStore";
+    private static final String DATABASE_NAME = "indooratlas_history.db";
+    private static final int DATABASE_VERSION = 1;
+    private static final long FLUSH_DELAY_MS = 5000;
+    private static final int FLUSH_ROWS = 100;
+    private static final long PRUNE_INTERVAL_MS = 60 * 60 * 1000L;
+    public static final long DEFAULT_RETENTION_MS = 30L * 24 * 60 * 60 * 1000;
+
+    private volatile long retentionMs = DEFAULT_RETENTION_MS;
+    private final Object writeLock = new Object();
+    private final ArrayList<IALocation> pendingPositions = new ArrayList<IALocation>();
+    private final ArrayList<RegionRow> pendingRegions = new ArrayList<RegionRow>();
+    private final ScheduledThreadPoolExecutor executor;
+    private ScheduledFuture<?> pendingFlush;
+    private boolean shutdown = false;
+    private long lastPruneTime = 0;
+
+    /**
+     * The constructor
+     * @param context
+     */
+    public PositionHistoryStore(Context context){
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "IndoorAtlasHistory");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db){
+        db.execSQL("CREATE TABLE positions (id INTEGER PRIMARY KEY AUTOINCREMENT, time INTEGER NOT NULL,"
+                + " latitude REAL, longitude REAL, altitude REAL, accuracy REAL, heading REAL,"
+                + " floor INTEGER, floor_plan_id TEXT)");
+        db.execSQL("CREATE INDEX positions_time ON positions (time)");
+        db.execSQL("CREATE INDEX positions_floor_plan_time ON positions (floor_plan_id, time)");
+        db.execSQL("CREATE TABLE regions (id INTEGER PRIMARY KEY AUTOINCREMENT, time INTEGER NOT NULL,"
+                + " region_id TEXT, region_type INTEGER, transition_type INTEGER, name TEXT)");
+        db.execSQL("CREATE INDEX regions_time ON regions (time)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion){
+    }
+
+    /**
+     * Sets the age after which rows are deleted, or 0 to keep rows forever.
+     * @param retentionMs
+     */
+    public void setRetentionMs(long retentionMs){
+        this.retentionMs = Math.max(0, retentionMs);
+    }
+
+    /**
+     * Adds a fix. Called on the positioning thread. Does nothing once the store is shut down,
+     * as a fix already on its way may still reach a store which is being replaced.
+     * @param iaLocation
+     */
+    public synchronized void addPosition(IALocation iaLocation){
+        if (shutdown){
+            return;
+        }
+        pendingPositions.add(iaLocation);
+        scheduleFlush();
+    }
+
+    /**
+     * Adds a region transition. Called on the positioning thread. Does nothing once the store
+     * is shut down.
+     * @param iaRegion
+     * @param transitionType
+     */
+    public synchronized void addRegion(IARegion iaRegion, int transitionType){
+        if (shutdown){
+            return;
+        }
+        long time = iaRegion.getTimestamp() > 0 ? iaRegion.getTimestamp() : System.currentTimeMillis();
+        pendingRegions.add(new RegionRow(iaRegion, transitionType, time));
+        scheduleFlush();
+    }
+
+    private void scheduleFlush(){
+        Runnable flush = new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        };
+        if (pendingPositions.size() + pendingRegions.size() >= FLUSH_ROWS){
+            if (pendingFlush!=null){
+                pendingFlush.cancel(false);
+            }
+            pendingFlush = executor.schedule(flush, 0, TimeUnit.MILLISECONDS);
+        }
+        else if (pendingFlush==null){
+            pendingFlush = executor.schedule(flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes the waiting rows in one transaction and deletes expired rows now and then.
+     * Returns after any write already in progress has finished, so a query which flushes
+     * first sees every row added before it. Adding rows is never blocked by a write.
+     */
+    public void flush(){
+        List<IALocation> positions;
+        List<RegionRow> regions;
+        synchronized (writeLock){
+            synchronized (this){
+                if (pendingFlush!=null){
+                    pendingFlush.cancel(false);
+                    pendingFlush = null;
+                }
+                if (pendingPositions.isEmpty() && pendingRegions.isEmpty()){
+                    return;
+                }
+                positions = new ArrayList<IALocation>(pendingPositions);
+                regions = new ArrayList<RegionRow>(pendingRegions);
+                pendingPositions.clear();
+                pendingRegions.clear();
+            }
+            try{
+                write(positions, regions);
+            }
+            catch(RuntimeException ex){
+                Log.e(TAG, "History rows lost: " + ex.toString());
+            }
+        }
+    }
+
+    private void write(List<IALocation> positions, List<RegionRow> regions){
+        SQLiteDatabase db = getWritableDatabase();
+        long now = System.currentTimeMillis();
+        long retention = retentionMs;
+        db.beginTransaction();
+        try{
+            SQLiteStatement insertPosition = db.compileStatement("INSERT INTO positions"
+                    + " (time, latitude, longitude, altitude, accuracy, heading, floor, floor_plan_id)"
+                    + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+            for (IALocation iaLocation : positions){
+                IARegion region = iaLocation.getRegion();
+                insertPosition.clearBindings();
+                insertPosition.bindLong(1, iaLocation.getTime());
+                insertPosition.bindDouble(2, iaLocation.getLatitude());
+                insertPosition.bindDouble(3, iaLocation.getLongitude());
+                insertPosition.bindDouble(4, iaLocation.getAltitude());
+                insertPosition.bindDouble(5, iaLocation.getAccuracy());
+                insertPosition.bindDouble(6, iaLocation.getBearing());
+                insertPosition.bindLong(7, iaLocation.getFloorLevel());
+                if (region!=null && region.getType() == IARegion.TYPE_FLOOR_PLAN && region.getId()!=null){
+                    insertPosition.bindString(8, region.getId());
+                }
+                else{
+                    insertPosition.bindNull(8);
+                }
+                insertPosition.executeInsert();
+            }
+            insertPosition.close();
+            SQLiteStatement insertRegion = db.compileStatement("INSERT INTO regions"
+                    + " (time, region_id, region_type, transition_type, name) VALUES (?, ?, ?, ?, ?)");
+            for (RegionRow row : regions){
+                insertRegion.clearBindings();
+                insertRegion.bindLong(1, row.time);
+                bindStringOrNull(insertRegion, 2, row.regionId);
+                insertRegion.bindLong(3, row.regionType);
+                insertRegion.bindLong(4, row.transitionType);
+                bindStringOrNull(insertRegion, 5, row.name);
+                insertRegion.executeInsert();
+            }
+            insertRegion.close();
+            if (retention > 0 && now - lastPruneTime > PRUNE_INTERVAL_MS){
+                String[] cutoff = new String[]{Long.toString(now - retention)};
+                db.delete("positions", "time < ?", cutoff);
+                db.delete("regions", "time < ?", cutoff);
+                lastPruneTime = now;
+            }
+            db.setTransactionSuccessful();
+        }
+        finally{
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Returns the JSON text of the fixes in a time range, oldest first, in the same format as
+     * delivered positions.
+     * @param from start of the range in milliseconds since epoch, inclusive
+     * @param to end of the range in milliseconds since epoch, inclusive
+     * @param floorPlanId only fixes on this floor plan, or null for all
+     * @param limit maximum number of fixes, or 0 for no limit
+     * @return
+     */
+    public String getPositions(long from, long to, String floorPlanId, int limit){
+        StringBuilder sb = new StringBuilder(1024);
+        String sql = "SELECT id, time, latitude, longitude, altitude, accuracy, heading, floor, floor_plan_id FROM positions"
+                + " WHERE time >= ? AND time <= ?" + (floorPlanId!=null ? " AND floor_plan_id = ?" : "")
+                + " ORDER BY time, id" + (limit > 0 ? " LIMIT " + limit : "");
+        String[] args = floorPlanId!=null
+                ? new String[]{Long.toString(from), Long.toString(to), floorPlanId}
+                : new String[]{Long.toString(from), Long.toString(to)};
+        Cursor positions;
+        flush();
+        positions = getReadableDatabase().rawQuery(sql, args);
+        try{
+            sb.append('[');
+            appendPositions(sb, positions, Integer.MAX_VALUE);
+            sb.append(']');
+        }
+        finally{
+            positions.close();
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns one page of the history in a time range as the JSON text of
+     * {"positions":[...],"regions":[...],"cursor":c}. Fixes and region transitions are paged
+     * together in time order, fixes first at equal times, so a page holds at most pageSize
+     * rows of both kinds. Pass the cursor of a page to get the next one. The cursor is null on
+     * the last page.
+     * @param from start of the range in milliseconds since epoch, inclusive
+     * @param to end of the range in milliseconds since epoch, inclusive
+     * @param pageSize maximum number of fixes and region transitions in the page
+     * @param cursor cursor of the previous page, or null for the first page
+     * @return
+     */
+    public String export(long from, long to, int pageSize, String cursor){
+        StringBuilder sb = new StringBuilder(1024);
+        // Rows up to lastTime are done, except those at lastTime with a larger id than the
+        // last id of their table
+        long lastTime = from - 1;
+        long lastPositionTime = lastTime;
+        long lastPositionId = Long.MAX_VALUE;
+        long lastRegionTime = lastTime;
+        long lastRegionId = Long.MAX_VALUE;
+        int positionCount = 0;
+        int regionCount = 0;
+        boolean morePositions;
+        boolean moreRegions;
+        Cursor positions;
+        Cursor regions = null;
+        if (cursor!=null){
+            String[] parts = cursor.split(":");
+            lastTime = lastPositionTime = lastRegionTime = Long.parseLong(parts[0]);
+            lastPositionId = Long.parseLong(parts[1]);
+            lastRegionId = Long.parseLong(parts[2]);
+        }
+        pageSize = Math.max(1, pageSize);
+        flush();
+        SQLiteDatabase db = getReadableDatabase();
+        positions = db.rawQuery("SELECT id, time, latitude, longitude, altitude, accuracy, heading, floor, floor_plan_id"
+                + " FROM positions WHERE (time > ? OR (time = ? AND id > ?)) AND time <= ? ORDER BY time, id LIMIT " + pageSize,
+                new String[]{Long.toString(lastTime), Long.toString(lastTime), Long.toString(lastPositionId), Long.toString(to)});
+        try{
+            regions = db.rawQuery("SELECT time, region_id, region_type, transition_type, name, id"
+                    + " FROM regions WHERE (time > ? OR (time = ? AND id > ?)) AND time <= ? ORDER BY time, id LIMIT " + pageSize,
+                    new String[]{Long.toString(lastTime), Long.toString(lastTime), Long.toString(lastRegionId), Long.toString(to)});
+            morePositions = positions.moveToNext();
+            moreRegions = regions.moveToNext();
+            while ((morePositions || moreRegions) && positionCount + regionCount < pageSize){
+                if (morePositions && (!moreRegions || positions.getLong(1) <= regions.getLong(0))){
+                    lastTime = lastPositionTime = positions.getLong(1);
+                    lastPositionId = positions.getLong(0);
+                    positionCount++;
+                    morePositions = positions.moveToNext();
+                }
+                else{
+                    lastTime = lastRegionTime = regions.getLong(0);
+                    lastRegionId = regions.getLong(5);
+                    regionCount++;
+                    moreRegions = regions.moveToNext();
+                }
+            }
+            positions.moveToPosition(-1);
+            regions.moveToPosition(-1);
+            sb.append("{\"positions\":[");
+            appendPositions(sb, positions, positionCount);
+            sb.append("],\"regions\":[");
+            appendRegions(sb, regions, regionCount);
+            sb.append("],\"cursor\":");
+            if (morePositions || moreRegions || positions.getCount() == pageSize || regions.getCount() == pageSize){
+                // A table without rows at lastTime in this page continues from its first row there
+                LocationEncoder.appendString(sb, lastTime + ":" + (lastPositionTime == lastTime ? lastPositionId : -1)
+                        + ":" + (lastRegionTime == lastTime ? lastRegionId : -1));
+            }
+            else{
+                sb.append("null");
+            }
+            sb.append('}');
+        }
+        finally{
+            positions.close();
+            if (regions!=null){
+                regions.close();
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Stops the store's thread after writing the waiting rows, and closes the database.
+     */
+    public void shutdown(){
+        synchronized (this){
+            if (shutdown){
+                return;
+            }
+            shutdown = true;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+                close();
+            }
+        });
+        executor.shutdown();
+    }
+
+    /**
+     * Appends position rows to sb.
+     * @param sb
+     * @param cursor rows of id, time, latitude, longitude, altitude, accuracy, heading, floor, floor_plan_id
+     * @param maxRows number of rows to append at most
+     */
+    private static void appendPositions(StringBuilder sb, Cursor cursor, int maxRows){
+        int count = 0;
+        while (count < maxRows && cursor.moveToNext()){
+            if (count > 0){
+                sb.append(',');
+            }
+            sb.append("{\"accuracy\":");
+            LocationEncoder.appendNumber(sb, cursor.getDouble(5));
+            sb.append(",\"altitude\":");
+            LocationEncoder.appendNumber(sb, cursor.getDouble(4));
+            sb.append(",\"heading\":");
+            LocationEncoder.appendNumber(sb, cursor.getDouble(6));
+            sb.append(",\"flr\":").append(cursor.getInt(7));
+            sb.append(",\"latitude\":");
+            LocationEncoder.appendNumber(sb, cursor.getDouble(2));
+            sb.append(",\"longitude\":");
+            LocationEncoder.appendNumber(sb, cursor.getDouble(3));
+            if (!cursor.isNull(8)){
+                sb.append(",\"region\":{\"regionId\":");
+                LocationEncoder.appendString(sb, cursor.getString(8));
+                sb.append(",\"regionType\":").append(IARegion.TYPE_FLOOR_PLAN);
+                sb.append(",\"transitionType\":").append(IndoorLocationListener.TRANSITION_TYPE_UNKNOWN).append('}');
+            }
+            sb.append(",\"timestamp\":").append(cursor.getLong(1));
+            sb.append('}');
+            count++;
+        }
+    }
+
+    /**
+     * Appends region transition rows to sb.
+     * @param sb
+     * @param cursor rows of time, region_id, region_type, transition_type, name
+     * @param maxRows number of rows to append at most
+     */
+    private static void appendRegions(StringBuilder sb, Cursor cursor, int maxRows){
+        int count = 0;
+        while (count < maxRows && cursor.moveToNext()){
+            if (count > 0){
+                sb.append(',');
+            }
+            sb.append("{\"regionId\":");
+            LocationEncoder.appendString(sb, cursor.getString(1));
+            sb.append(",\"name\":");
+            LocationEncoder.appendString(sb, cursor.isNull(4) ? null : cursor.getString(4));
+            sb.append(",\"timestamp\":").append(cursor.getLong(0));
+            sb.append(",\"regionType\":").append(cursor.getInt(2));
+            sb.append(",\"transitionType\":").append(cursor.getInt(3));
+            sb.append('}');
+            count++;
+        }
+    }
+
+    private static void bindStringOrNull(SQLiteStatement statement, int index, String value){
+        if (value!=null){
+            statement.bindString(index, value);
+        }
+        else{
+            statement.bindNull(index);
+        }
+    }
+
+    /**
+     * A region transition waiting to be written.
+     */
+    private static class RegionRow {
+        final String regionId;
+        final String name;
+        final int regionType;
+        final int transitionType;
+        final long time;
+
+        RegionRow(IARegion iaRegion, int transitionType, long time){
+            this.regionId = iaRegion.getId();
+            this.name = iaRegion.getName();
+            this.regionType = iaRegion.getType();
+            this.transitionType = transitionType;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.ialocation.plugin;
+
+import org.apache.cordova.CallbackContext;
+import org.json.JSONObject;
+
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * A single getCurrentPosition request waiting for the next fix.
+ */
+public class PositionRequest {
+    private final CallbackContext callbackContext;
+    private final long timeoutMs;
+    private ScheduledFuture<?> timeout;
+    private final LocationRequestSpec requestSpec;
+
+    /**
+     * The constructor
+     * @param callbackContext
+     * @param timeoutMs time to wait for a fix before failing with TIMEOUT, or 0 to wait forever
+     * @param hints location request hints (fastestInterval, smallestDisplacement), may be null
+     */
+    public PositionRequest(CallbackContext callbackContext, long timeoutMs, JSONObject hints){
+        this.callbackContext = callbackContext;
+        this.timeoutMs = timeoutMs;
+        this.requestSpec = hints!=null ? new LocationRequestSpec(hints.optLong("fastestInterval", 0),
+                (float) hints.optDouble("smallestDisplacement", 0)) : LocationRequestSpec.DEFAULT;
+    }
+
+    /**
+     * Returns the id of the request, which is the id of its JS callback.
+     * @return
+     */
+    public String getId(){
+        return callbackContext.getCallbackId();
+    }
+
+    public CallbackContext getCallbackContext(){
+        return callbackContext;
+    }
+
+    /**
+     * Returns the location update requirements of this request.
+     * @return
+     */
+    public LocationRequestSpec getRequestSpec(){
+        return requestSpec;
+    }
+
+    public long getTimeoutMs(){
+        return timeoutMs;
+    }
+
+    /**
+     * Sets the handle of the pending timeout, cancelling the previous one.
+     * @param timeout
+     */
+    public synchronized void setTimeout(ScheduledFuture<?> timeout){
+        cancelTimeout();
+        this.timeout = timeout;
+    }
+
+    /**
+     * Cancels the pending timeout, if any.
+     */
+    public synchronized void cancelTimeout(){
+        if (timeout!=null){
+            timeout.cancel(false);
+            timeout = null;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.ialocation.plugin;
+
+import android.location.Location;
+
+import com.indooratlas.android.sdk.IALocation;
+
+/**
+ * Constant velocity Kalman filter which smooths fixes and predicts positions between them.
+ * Fixes arrive at roughly 1 Hz; the filter estimates position and velocity in a local
+ * east/north frame in meters, and predictBatch extrapolates the estimate into short batches
+ * of future positions which JS only has to pick from on each animation frame.
+ * Each axis is filtered independently. Fix accuracy is used as the position measurement
+ * noise and, when the fix has both, speed and bearing are used as a velocity measurement.
+ * The filter is reset when the floor changes or fixes stop for a while.
+ */
+public class PositionSmoother {
+    private static final double EARTH_RADIUS_METERS = 6371008.8;
+    private static final double ACCELERATION_VARIANCE = 0.5;
+    private static final double VELOCITY_VARIANCE = 1.0;
+    private static final double INITIAL_VELOCITY_VARIANCE = 4.0;
+    private static final long RESET_GAP_MS = 10000;
+    private static final long MAX_EXTRAPOLATION_MS = 3000;
+
+    private final int rateHz;
+    private final long batchMs;
+    private final Axis east = new Axis();
+    private final Axis north = new Axis();
+    private boolean initialized = false;
+    private boolean running = false;
+    private double originLatitude;
+    private double originLongitude;
+    private double metersPerDegreeLongitude;
+    private int floorLevel;
+    private long fixTime;
+
+    /**
+     * The constructor
+     * @param rateHz rate of predicted positions
+     * @param batchMs length of time covered by one batch, which is also the delivery interval
+     */
+    public PositionSmoother(int rateHz, long batchMs){
+        this.rateHz = rateHz;
+        this.batchMs = batchMs;
+    }
+
+    public long getBatchMs(){
+        return batchMs;
+    }
+
+    /**
+     * Returns true while batches are being delivered. Only used on the positioning thread.
+     * @return
+     */
+    public boolean isRunning(){
+        return running;
+    }
+
+    public void setRunning(boolean running){
+        this.running = running;
+    }
+
+    /**
+     * Adds a fix to the filter.
+     * @param iaLocation
+     */
+    public void update(IALocation iaLocation){
+        Location location = iaLocation.toLocation();
+        double positionVariance = Math.max(1.0, iaLocation.getAccuracy());
+        positionVariance *= positionVariance;
+        if (!initialized || iaLocation.getFloorLevel() != floorLevel || iaLocation.getTime() - fixTime > RESET_GAP_MS){
+            reset(iaLocation, positionVariance);
+        }
+        else{
+            double dt = Math.max(0, iaLocation.getTime() - fixTime) / 1000.0;
+            east.predict(dt);
+            north.predict(dt);
+            east.updatePosition(toEast(iaLocation.getLongitude()), positionVariance);
+            north.updatePosition(toNorth(iaLocation.getLatitude()), positionVariance);
+        }
+        if (location!=null && location.hasSpeed() && location.hasBearing()){
+            double bearing = Math.toRadians(iaLocation.getBearing());
+            east.updateVelocity(location.getSpeed() * Math.sin(bearing), VELOCITY_VARIANCE);
+            north.updateVelocity(location.getSpeed() * Math.cos(bearing), VELOCITY_VARIANCE);
+        }
+        fixTime = iaLocation.getTime();
+    }
+
+    /**
+     * Returns the JSON text of a batch of positions predicted for the next batch interval:
+     * {"floor":f,"samples":[timestamp,latitude,longitude,...]}. Sample timestamps are in
+     * milliseconds since epoch.
+     * @param now current time in milliseconds since epoch
+     * @return the batch, or null if the last fix is too old to extrapolate from
+     */
+    public String predictBatch(long now){
+        int count = Math.max(1, (int) Math.round(batchMs * rateHz / 1000.0));
+        double periodMs = 1000.0 / rateHz;
+        long time;
+        double dt;
+        if (!initialized || now - fixTime > MAX_EXTRAPOLATION_MS){
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(32 + count * 48);
+        sb.append("{\"floor\":").append(floorLevel).append(",\"samples\":[");
+        for (int i = 0; i < count; i++){
+            time = now + Math.round(i * periodMs);
+            dt = Math.max(0, Math.min(time - fixTime, MAX_EXTRAPOLATION_MS)) / 1000.0;
+            if (i > 0){
+                sb.append(',');
+            }
+            sb.append(time).append(',');
+            LocationEncoder.appendNumber(sb, toLatitude(north.predictPosition(dt)));
+            sb.append(',');
+            LocationEncoder.appendNumber(sb, toLongitude(east.predictPosition(dt)));
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+
+    private void reset(IALocation iaLocation, double positionVariance){
+        originLatitude = iaLocation.getLatitude();
+        originLongitude = iaLocation.getLongitude();
+        metersPerDegreeLongitude = Math.toRadians(EARTH_RADIUS_METERS) * Math.cos(Math.toRadians(originLatitude));
+        floorLevel = iaLocation.getFloorLevel();
+        east.reset(0, positionVariance);
+        north.reset(0, positionVariance);
+        initialized = true;
+    }
+
+    private double toEast(double longitude){
+        return (longitude - originLongitude) * metersPerDegreeLongitude;
+    }
+
+    private double toNorth(double latitude){
+        return Math.toRadians(latitude - originLatitude) * EARTH_RADIUS_METERS;
+    }
+
+    private double toLongitude(double eastMeters){
+        return originLongitude + eastMeters / metersPerDegreeLongitude;
+    }
+
+    private double toLatitude(double northMeters){
+        return originLatitude + Math.toDegrees(northMeters / EARTH_RADIUS_METERS);
+    }
+
+    /**
+     * Position and velocity estimate along one axis with its 2x2 covariance.
+     */
+    private static class Axis {
+        double position;
+        double velocity;
+        double p00;
+        double p01;
+        double p11;
+
+        void reset(double position, double positionVariance){
+            this.position = position;
+            this.velocity = 0;
+            p00 = positionVariance;
+            p01 = 0;
+            p11 = INITIAL_VELOCITY_VARIANCE;
+        }
+
+        void predict(double dt){
+            double dt2 = dt * dt;
+            position += velocity * dt;
+            p00 += dt * (2 * p01 + dt * p11) + ACCELERATION_VARIANCE * dt2 * dt2 / 4;
+            p01 += dt * p11 + ACCELERATION_VARIANCE * dt2 * dt / 2;
+            p11 += ACCELERATION_VARIANCE * dt2;
+        }
+
+        void updatePosition(double measurement, double variance){
+            double s = p00 + variance;
+            double k0 = p00 / s;
+            double k1 = p01 / s;
+            double innovation = measurement - position;
+            position += k0 * innovation;
+            velocity += k1 * innovation;
+            p11 -= k1 * p01;
+            p01 *= 1 - k0;
+            p00 *= 1 - k0;
+        }
+
+        void updateVelocity(double measurement, double variance){
+            double s = p11 + variance;
+            double k0 = p01 / s;
+            double k1 = p11 / s;
+            double innovation = measurement - velocity;
+            position += k0 * innovation;
+            velocity += k1 * innovation;
+            p00 -= k0 * p01;
+            p01 *= 1 - k1;
+            p11 *= 1 - k1;
+        }
+
+        double predictPosition(double dt){
+            return position + velocity * dt;
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package com.ialocation.plugin;
+
+import android.location.Location;
+
+import com.indooratlas.android.sdk.IALocation;
+
+import org.apache.cordova.CallbackContext;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * A single watchPosition subscription together with the native delivery options given to it.
+ * Fixes which do not pass the options are dropped before any PluginResult is built.
+ * In batch mode accepted fixes are buffered and delivered to JS as one JSON array, or as one
+ * binary message when the watch uses the binary format.
+ * While the app is in background a watch follows its background policy: it is paused, keeps
+ * receiving fixes at a reduced rate, or keeps buffering accepted fixes which are delivered
+ * together when the app returns to foreground. A watch without a background policy keeps
+ * receiving fixes at its foreground rate, as watches did before background policies existed.
+ * A watch with the interpolation option also gets batches of smoothed, predicted positions
+ * from a PositionSmoother between fixes.
+ */
+public class PositionWatch {
+    private static final int DEFAULT_BATCH_MAX_FIXES = 10;
+    private static final long DEFAULT_BATCH_MAX_LATENCY_MS = 5000;
+    private static final long DEFAULT_BACKGROUND_INTERVAL_MS = 60000;
+    private static final int DEFAULT_BACKGROUND_BUFFER_SIZE = 100;
+    private static final int DEFAULT_INTERPOLATION_RATE_HZ = 30;
+    private static final long DEFAULT_INTERPOLATION_BATCH_MS = 250;
+
+    public static final String BACKGROUND_POLICY_PAUSE = "pause";
+    public static final String BACKGROUND_POLICY_REDUCED = "reduced";
+    public static final String BACKGROUND_POLICY_BUFFER = "buffer";
+
+    private final String watchId;
+    private final CallbackContext callbackContext;
+    private final long minIntervalMs;
+    private final float minDistanceMeters;
+    private final float maxAccuracyMeters;
+    private final float[] distanceResult = new float[1];
+    private boolean hasDelivered = false;
+    private long lastDeliveredTime;
+    private double lastDeliveredLatitude;
+    private double lastDeliveredLongitude;
+    private final boolean batched;
+    private final int batchMaxFixes;
+    private final long batchMaxLatencyMs;
+    private final boolean binary;
+    private final ArrayList<String> pendingFixes = new ArrayList<String>();
+    private final ArrayList<IALocation> pendingLocations = new ArrayList<IALocation>();
+    private final long timeoutMs;
+    private ScheduledFuture<?> timeout;
+    private final LocationRequestSpec requestSpec;
+    private final String backgroundPolicy;
+    private final long backgroundIntervalMs;
+    private final int backgroundBufferSize;
+    private final LocationRequestSpec backgroundRequestSpec;
+    private final PositionSmoother smoother;
+    // Written only on the positioning thread, read by getMetrics on the WebView thread
+    private volatile long deliveredFixes = 0;
+    private volatile long droppedFixes = 0;
+
+    /**
+     * The constructor
+     * @param watchId
+     * @param callbackContext
+     * @param options watchPosition options, may be null
+     */
+    public PositionWatch(String watchId, CallbackContext callbackContext, JSONObject options){
+        this.watchId = watchId;
+        this.callbackContext = callbackContext;
+        if (options!=null){
+            minIntervalMs = Math.max(0, options.optLong("minIntervalMs", 0));
+            minDistanceMeters = (float) Math.max(0, options.optDouble("minDistanceMeters", 0));
+            maxAccuracyMeters = (float) Math.max(0, options.optDouble("maxAccuracyMeters", 0));
+        }
+        else{
+            minIntervalMs = 0;
+            minDistanceMeters = 0;
+            maxAccuracyMeters = 0;
+        }
+        binary = options!=null && "binary".equals(options.optString("format"));
+        timeoutMs = options!=null ? Math.max(0, options.optLong("timeout", 0)) : 0;
+        // A watch which throttles deliveries does not need fixes more often than it delivers them
+        requestSpec = options!=null ? new LocationRequestSpec(options.optLong("fastestInterval", minIntervalMs),
+                (float) options.optDouble("smallestDisplacement", minDistanceMeters)) : LocationRequestSpec.DEFAULT;
+        backgroundPolicy = getBackgroundPolicy(options);
+        if (options!=null){
+            backgroundIntervalMs = Math.max(0, options.optLong("backgroundIntervalMs",
+                    BACKGROUND_POLICY_REDUCED.equals(options.optString("backgroundPolicy")) ? DEFAULT_BACKGROUND_INTERVAL_MS : 0));
+            backgroundBufferSize = getBufferSize(options.optInt("backgroundBufferSize", DEFAULT_BACKGROUND_BUFFER_SIZE));
+        }
+        else{
+            backgroundIntervalMs = 0;
+            backgroundBufferSize = DEFAULT_BACKGROUND_BUFFER_SIZE;
+        }
+        backgroundRequestSpec = new LocationRequestSpec(Math.max(requestSpec.getFastestInterval(), backgroundIntervalMs),
+                requestSpec.getSmallestDisplacement());
+        JSONObject interpolation = options!=null ? options.optJSONObject("interpolation") : null;
+        if (interpolation!=null){
+            smoother = new PositionSmoother(Math.max(1, interpolation.optInt("rateHz", DEFAULT_INTERPOLATION_RATE_HZ)),
+                    Math.max(16, interpolation.optLong("batchMs", DEFAULT_INTERPOLATION_BATCH_MS)));
+        }
+        else{
+            smoother = null;
+        }
+        JSONObject batch = options!=null ? options.optJSONObject("batch") : null;
+        if (batch!=null){
+            batched = true;
+            batchMaxFixes = getBufferSize(batch.optInt("maxFixes", DEFAULT_BATCH_MAX_FIXES));
+            batchMaxLatencyMs = Math.max(0, batch.optLong("maxLatencyMs", DEFAULT_BATCH_MAX_LATENCY_MS));
+        }
+        else{
+            batched = false;
+            batchMaxFixes = 1;
+            batchMaxLatencyMs = 0;
+        }
+    }
+
+    public String getWatchId(){
+        return watchId;
+    }
+
+    public CallbackContext getCallbackContext(){
+        return callbackContext;
+    }
+
+    /**
+     * Returns the location update requirements of this watch.
+     * @param background true if the app is in background
+     * @return the requirements, or null if the watch needs no fixes
+     */
+    public LocationRequestSpec getRequestSpec(boolean background){
+        if (!background){
+            return requestSpec;
+        }
+        if (BACKGROUND_POLICY_PAUSE.equals(backgroundPolicy)){
+            return null;
+        }
+        if (BACKGROUND_POLICY_REDUCED.equals(backgroundPolicy)){
+            return backgroundRequestSpec;
+        }
+        return requestSpec;
+    }
+
+    /**
+     * Returns what the watch does while the app is in background: BACKGROUND_POLICY_PAUSE,
+     * BACKGROUND_POLICY_REDUCED or BACKGROUND_POLICY_BUFFER.
+     * @return
+     */
+    public String getBackgroundPolicy(){
+        return backgroundPolicy;
+    }
+
+    /**
+     * Returns the smoother of a watch with interpolation, or null.
+     * @return
+     */
+    public PositionSmoother getSmoother(){
+        return smoother;
+    }
+
+    /**
+     * Returns true if the watch receives no fixes while the app is in background.
+     * @return
+     */
+    public boolean isPausedInBackground(){
+        return BACKGROUND_POLICY_PAUSE.equals(backgroundPolicy);
+    }
+
+    /**
+     * Returns true if the watch buffers its fixes while the app is in background.
+     * @return
+     */
+    public boolean isBufferedInBackground(){
+        return BACKGROUND_POLICY_BUFFER.equals(backgroundPolicy);
+    }
+
+    /**
+     * Returns the longest time to wait for an accepted fix before reporting TIMEOUT, or 0.
+     * @return
+     */
+    public long getTimeoutMs(){
+        return timeoutMs;
+    }
+
+    /**
+     * Sets the handle of the pending timeout, cancelling the previous one.
+     * @param timeout
+     */
+    public synchronized void setTimeout(ScheduledFuture<?> timeout){
+        cancelTimeout();
+        this.timeout = timeout;
+    }
+
+    /**
+     * Cancels the pending timeout, if any.
+     */
+    public synchronized void cancelTimeout(){
+        if (timeout!=null){
+            timeout.cancel(false);
+            timeout = null;
+        }
+    }
+
+    /**
+     * Checks the fix against the watch options and records it as delivered if it passes.
+     * In background a watch with the reduced policy accepts at most one fix per background
+     * interval.
+     * @param iaLocation
+     * @param background true if the app is in background
+     * @return true if the fix should be sent to this watch
+     */
+    public boolean accept(IALocation iaLocation, boolean background){
+        long intervalMs = minIntervalMs;
+        if (background && BACKGROUND_POLICY_REDUCED.equals(backgroundPolicy)){
+            intervalMs = Math.max(minIntervalMs, backgroundIntervalMs);
+        }
+        if (maxAccuracyMeters > 0 && iaLocation.getAccuracy() > maxAccuracyMeters){
+            onDropped();
+            return false;
+        }
+        if (hasDelivered){
+            if (intervalMs > 0 && iaLocation.getTime() - lastDeliveredTime < intervalMs){
+                onDropped();
+                return false;
+            }
+            if (minDistanceMeters > 0){
+                Location.distanceBetween(lastDeliveredLatitude, lastDeliveredLongitude,
+                        iaLocation.getLatitude(), iaLocation.getLongitude(), distanceResult);
+                if (distanceResult[0] < minDistanceMeters){
+                    onDropped();
+                    return false;
+                }
+            }
+        }
+        deliveredFixes++;
+        hasDelivered = true;
+        lastDeliveredTime = iaLocation.getTime();
+        lastDeliveredLatitude = iaLocation.getLatitude();
+        lastDeliveredLongitude = iaLocation.getLongitude();
+        return true;
+    }
+
+    /**
+     * Counts a fix which the watch did not get because of its options or its background policy.
+     * Only called on the positioning thread, which is the only writer of the counts.
+     */
+    public void onDropped(){
+        droppedFixes++;
+    }
+
+    /**
+     * Returns the number of fixes accepted for delivery to this watch.
+     * @return
+     */
+    public long getDeliveredFixes(){
+        return deliveredFixes;
+    }
+
+    /**
+     * Returns the number of fixes dropped or throttled for this watch.
+     * @return
+     */
+    public long getDroppedFixes(){
+        return droppedFixes;
+    }
+
+    /**
+     * Returns true if fixes are delivered in the binary format of BinaryLocationEncoder.
+     * @return
+     */
+    public boolean isBinary(){
+        return binary;
+    }
+
+    /**
+     * Returns true if accepted fixes are buffered and delivered together.
+     * @return
+     */
+    public boolean isBatched(){
+        return batched;
+    }
+
+    /**
+     * Returns the longest time a buffered fix may wait before the batch is delivered.
+     * @return
+     */
+    public long getBatchMaxLatencyMs(){
+        return batchMaxLatencyMs;
+    }
+
+    /**
+     * Buffers an accepted fix for batch delivery.
+     * @param iaLocation
+     * @param locationJson
+     * @return true if the buffer was empty before this fix
+     */
+    public boolean enqueue(IALocation iaLocation, String locationJson){
+        if (binary){
+            pendingLocations.add(iaLocation);
+            return pendingLocations.size() == 1;
+        }
+        pendingFixes.add(locationJson);
+        return pendingFixes.size() == 1;
+    }
+
+    /**
+     * Buffers an accepted fix while the app is in background. When the buffer is full the
+     * oldest fix is dropped.
+     * @param iaLocation
+     * @param locationJson
+     */
+    public void enqueueInBackground(IALocation iaLocation, String locationJson){
+        enqueue(iaLocation, locationJson);
+        if (pendingLocations.size() > backgroundBufferSize){
+            pendingLocations.remove(0);
+        }
+        if (pendingFixes.size() > backgroundBufferSize){
+            pendingFixes.remove(0);
+        }
+    }
+
+    /**
+     * Returns true if the batch has reached its maximum size.
+     * @return
+     */
+    public boolean isBatchFull(){
+        return pendingFixes.size() + pendingLocations.size() >= batchMaxFixes;
+    }
+
+    /**
+     * Returns buffered fixes as one binary message and empties the buffer.
+     * @param binaryEncoder
+     * @return the message, or null if no fixes are buffered
+     */
+    public byte[] drainBinaryBatch(BinaryLocationEncoder binaryEncoder){
+        byte[] message;
+        if (pendingLocations.isEmpty()){
+            return null;
+        }
+        message = binaryEncoder.encode(pendingLocations);
+        pendingLocations.clear();
+        return message;
+    }
+
+    /**
+     * Returns buffered fixes as the JSON text of an array and empties the buffer.
+     * @return the array, or null if no fixes are buffered
+     */
+    public String drainBatch(){
+        if (pendingFixes.isEmpty()){
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(pendingFixes.size() * 256);
+        sb.append('[');
+        for (int i = 0; i < pendingFixes.size(); i++){
+            if (i > 0){
+                sb.append(',');
+            }
+            sb.append(pendingFixes.get(i));
+        }
+        sb.append(']');
+        pendingFixes.clear();
+        return sb.toString();
+    }
+
+    /**
+     * Clamps a buffer size option to what one message can carry. A binary message holds at
+     * most BinaryLocationEncoder.MAX_FIXES fixes.
+     */
+    private int getBufferSize(int size){
+        return Math.max(1, binary ? Math.min(size, BinaryLocationEncoder.MAX_FIXES) : size);
+    }
+
+    /**
+     * Returns the background policy of the options. Without one the watch is treated as
+     * reduced with no interval, which delivers in background like watches always did.
+     */
+    private static String getBackgroundPolicy(JSONObject options){
+        String policy = options!=null ? options.optString("backgroundPolicy", BACKGROUND_POLICY_REDUCED) : BACKGROUND_POLICY_REDUCED;
+        if (BACKGROUND_POLICY_PAUSE.equals(policy) || BACKGROUND_POLICY_BUFFER.equals(policy)){
+            return policy;
+        }
+        return BACKGROUND_POLICY_REDUCED;
+    }
+}
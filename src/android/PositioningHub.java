@@ -0,0 +1,271 @@
+package com.ialocation.plugin;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.indooratlas.android.sdk.IALocation;
+import com.indooratlas.android.sdk.IALocationListener;
+import com.indooratlas.android.sdk.IALocationManager;
+import com.indooratlas.android.sdk.IALocationRequest;
+import com.indooratlas.android.sdk.IARegion;
+import com.indooratlas.android.sdk.resources.IAResourceManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process-wide owner of the IndoorAtlas location and resource managers. Every plugin instance,
+ * one per WebView, attaches a Client and uses it as its LocationSource; the hub runs a single
+ * positioning session with the most demanding combination of the clients' requests and fans
+ * each fix and region transition out to all of them. The session stops when the last client
+ * removes its updates, and the managers are destroyed when the last client is destroyed.
+ * The first client's API key is used for the whole process.
+ * Clients are used on the UI thread. The hub receives fixes on its own thread and hands each
+ * one to the looper its listener was registered with, or calls a listener registered without
+ * a looper right there, so fixes never pass through the UI thread. Listeners are kept in copy-on-write lists, which the hub thread iterates without
+ * locking or copying.
+ */
+public class PositioningHub implements IALocationListener, IARegion.Listener {
+    private static final String TAG = "PositioningHub";
+    private static PositioningHub instance;
+
+    private final IndoorAtlasLocationSource source;
+    private final IAResourceManager resourceManager;
+    private final String apiKey;
+    private final HandlerThread thread;
+    private final CopyOnWriteArrayList<Registration> locationListeners = new CopyOnWriteArrayList<Registration>();
+    private final CopyOnWriteArrayList<IARegion.Listener> regionListeners = new CopyOnWriteArrayList<IARegion.Listener>();
+    private int references = 0;
+    private LocationRequestSpec requestSpec = null;
+
+    private PositioningHub(Context context, String apiKey, String apiSecret){
+        Bundle bundle = new Bundle(2);
+        bundle.putString(IALocationManager.EXTRA_API_KEY, apiKey);
+        bundle.putString(IALocationManager.EXTRA_API_SECRET, apiSecret);
+        this.apiKey = apiKey;
+        this.source = new IndoorAtlasLocationSource(IALocationManager.create(context, bundle));
+        this.resourceManager = IAResourceManager.create(context, bundle);
+        this.thread = new HandlerThread("IndoorAtlasHub", Process.THREAD_PRIORITY_BACKGROUND);
+        this.thread.start();
+    }
+
+    /**
+     * Attaches a client to the hub, creating the hub for the first client.
+     * @param context any context; the application context is kept
+     * @param apiKey
+     * @param apiSecret
+     * @return
+     */
+    public static synchronized Client attach(Context context, String apiKey, String apiSecret){
+        if (instance==null){
+            instance = new PositioningHub(context.getApplicationContext(), apiKey, apiSecret);
+        }
+        else if (!instance.apiKey.equals(apiKey)){
+            Log.w(TAG, "IndoorAtlas is already initialized with another API key, sharing it");
+        }
+        instance.references++;
+        return instance.new Client();
+    }
+
+    private static synchronized void release(PositioningHub hub){
+        hub.references--;
+        if (hub.references == 0){
+            hub.source.destroy();
+            hub.thread.quit();
+            if (instance == hub){
+                instance = null;
+            }
+        }
+    }
+
+    /**
+     * Restarts, re-requests or stops the shared session to match the registered listeners.
+     */
+    private void updateSession(){
+        ArrayList<LocationRequestSpec> specs = new ArrayList<LocationRequestSpec>();
+        LocationRequestSpec spec;
+        if (locationListeners.isEmpty()){
+            if (requestSpec!=null){
+                source.removeLocationUpdates(this);
+                requestSpec = null;
+            }
+            return;
+        }
+        for (Registration registration : locationListeners){
+            specs.add(registration.spec);
+        }
+        spec = LocationRequestSpec.combine(specs);
+        if (!spec.equals(requestSpec)){
+            requestSpec = spec;
+            source.requestLocationUpdates(spec.toLocationRequest(), this, thread.getLooper());
+        }
+    }
+
+    /**
+     * Returns the registration of a listener, or null.
+     */
+    private Registration getRegistration(IALocationListener listener){
+        for (Registration registration : locationListeners){
+            if (registration.listener == listener){
+                return registration;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void onLocationChanged(final IALocation iaLocation){
+        for (final Registration registration : locationListeners){
+            registration.run(new Runnable() {
+                @Override
+                public void run() {
+                    registration.listener.onLocationChanged(iaLocation);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onStatusChanged(final String provider, final int status, final Bundle bundle){
+        for (final Registration registration : locationListeners){
+            registration.run(new Runnable() {
+                @Override
+                public void run() {
+                    registration.listener.onStatusChanged(provider, status, bundle);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onEnterRegion(IARegion iaRegion){
+        for (IARegion.Listener listener : regionListeners){
+            listener.onEnterRegion(iaRegion);
+        }
+    }
+
+    @Override
+    public void onExitRegion(IARegion iaRegion){
+        for (IARegion.Listener listener : regionListeners){
+            listener.onExitRegion(iaRegion);
+        }
+    }
+
+    /**
+     * A location listener of a client and the request it was registered with.
+     */
+    private static class Registration {
+        final IALocationListener listener;
+        final LocationRequestSpec spec;
+        final Handler handler;
+
+        Registration(IALocationListener listener, LocationRequestSpec spec, Looper looper){
+            this.listener = listener;
+            this.spec = spec;
+            this.handler = looper!=null ? new Handler(looper) : null;
+        }
+
+        /**
+         * Runs a callback on the looper the listener was registered with.
+         */
+        void run(Runnable callback){
+            if (handler==null || handler.getLooper() == Looper.myLooper()){
+                callback.run();
+            }
+            else{
+                handler.post(callback);
+            }
+        }
+    }
+
+    /**
+     * The hub as seen by one plugin instance. Destroying a client removes its listeners and
+     * releases its reference to the hub.
+     */
+    public class Client implements LocationSource {
+        private final List<IALocationListener> ownLocationListeners = new ArrayList<IALocationListener>();
+        private final List<IARegion.Listener> ownRegionListeners = new ArrayList<IARegion.Listener>();
+        private boolean destroyed = false;
+
+        public IAResourceManager getResourceManager(){
+            return resourceManager;
+        }
+
+        @Override
+        public void requestLocationUpdates(IALocationRequest request, IALocationListener listener, Looper looper){
+            if (destroyed){
+                return;
+            }
+            LocationRequestSpec spec = new LocationRequestSpec(request.getFastestInterval(), request.getSmallestDisplacement());
+            Registration previous = getRegistration(listener);
+            if (previous!=null){
+                locationListeners.set(locationListeners.indexOf(previous), new Registration(listener, spec, looper));
+            }
+            else{
+                locationListeners.add(new Registration(listener, spec, looper));
+            }
+            if (!ownLocationListeners.contains(listener)){
+                ownLocationListeners.add(listener);
+            }
+            updateSession();
+        }
+
+        @Override
+        public void removeLocationUpdates(IALocationListener listener){
+            if (ownLocationListeners.remove(listener)){
+                locationListeners.remove(getRegistration(listener));
+                updateSession();
+            }
+        }
+
+        @Override
+        public void registerRegionListener(IARegion.Listener listener){
+            if (destroyed || ownRegionListeners.contains(listener)){
+                return;
+            }
+            ownRegionListeners.add(listener);
+            regionListeners.add(listener);
+            if (regionListeners.size() == 1){
+                source.registerRegionListener(PositioningHub.this);
+            }
+        }
+
+        @Override
+        public void unregisterRegionListener(IARegion.Listener listener){
+            if (ownRegionListeners.remove(listener)){
+                regionListeners.remove(listener);
+                if (regionListeners.isEmpty()){
+                    source.unregisterRegionListener(PositioningHub.this);
+                }
+            }
+        }
+
+        @Override
+        public void setLocation(IALocation location){
+            if (!destroyed){
+                source.setLocation(location);
+            }
+        }
+
+        @Override
+        public void destroy(){
+            if (destroyed){
+                return;
+            }
+            for (IALocationListener listener : new ArrayList<IALocationListener>(ownLocationListeners)){
+                removeLocationUpdates(listener);
+            }
+            for (IARegion.Listener listener : new ArrayList<IARegion.Listener>(ownRegionListeners)){
+                unregisterRegionListener(listener);
+            }
+            destroyed = true;
+            release(PositioningHub.this);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.ialocation.plugin;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.IBinder;
+
+/**
+ * Foreground service which keeps the app process, and with it the shared positioning session,
+ * running while the app is in background or the screen is off. The service itself does not
+ * position; it only holds the process in the foreground state with an ongoing notification.
+ * It must be started while the app is in foreground, as Android does not let background apps
+ * start foreground services.
+ */
+public class PositioningService extends Service {
+    private static final String CHANNEL_ID = "indooratlas_positioning";
+    private static final int NOTIFICATION_ID = 0x1A10;
+    private static final String EXTRA_TITLE = "title";
+    private static final String EXTRA_TEXT = "text";
+
+    /**
+     * Starts the service, or updates the notification of a running service.
+     * @param context
+     * @param title notification title
+     * @param text notification text
+     */
+    public static void start(Context context, String title, String text){
+        Intent intent = new Intent(context, PositioningService.class);
+        intent.putExtra(EXTRA_TITLE, title);
+        intent.putExtra(EXTRA_TEXT, text);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O){
+            context.startForegroundService(intent);
+        }
+        else{
+            context.startService(intent);
+        }
+    }
+
+    public static void stop(Context context){
+        context.stopService(new Intent(context, PositioningService.class));
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId){
+        String title = intent!=null ? intent.getStringExtra(EXTRA_TITLE) : null;
+        String text = intent!=null ? intent.getStringExtra(EXTRA_TEXT) : null;
+        startForeground(NOTIFICATION_ID, createNotification(title!=null ? title : "Positioning", text));
+        // The positioning session lives in the plugin; without it there is nothing to restart
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public void onDestroy(){
+        stopForeground(true);
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent){
+        return null;
+    }
+
+    private Notification createNotification(String title, String text){
+        Notification.Builder builder;
+        Intent launchIntent = getPackageManager().getLaunchIntentForPackage(getPackageName());
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O){
+            NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+            notificationManager.createNotificationChannel(new NotificationChannel(CHANNEL_ID, "Positioning", NotificationManager.IMPORTANCE_LOW));
+            builder = new Notification.Builder(this, CHANNEL_ID);
+        }
+        else{
+            builder = new Notification.Builder(this);
+        }
+        builder.setContentTitle(title)
+                .setSmallIcon(getApplicationInfo().icon)
+                .setOngoing(true);
+        if (text!=null){
+            builder.setContentText(text);
+        }
+        if (launchIntent!=null){
+            builder.setContentIntent(PendingIntent.getActivity(this, 0, launchIntent,
+                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,123 @@
+package com.ialocation.plugin;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread on which fixes and region events are serialized, filtered and fanned out to
+ * Javascript callbacks. In THREADING_MODE_WORKER (the default) this is a dedicated background
+ * HandlerThread, which keeps the plugin's work off the UI thread. THREADING_MODE_MAIN runs
+ * everything on the main looper as earlier versions did.
+ * Work handed over to the thread through execute is counted. Fixes, status changes and region
+ * events enter the thread that way as well, as location updates are requested without a
+ * looper, so the queue depth shows whether the thread keeps up with the fix rate.
+ */
+public class PositioningWorker {
+    public static final String THREADING_MODE_WORKER = "worker";
+    public static final String THREADING_MODE_MAIN = "main";
+
+    private final String threadingMode;
+    private final HandlerThread thread;
+    private final Handler handler;
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong executedTasks = new AtomicLong();
+
+    /**
+     * The constructor
+     * @param threadingMode THREADING_MODE_WORKER or THREADING_MODE_MAIN
+     */
+    public PositioningWorker(String threadingMode){
+        if (THREADING_MODE_MAIN.equals(threadingMode)){
+            this.threadingMode = THREADING_MODE_MAIN;
+            thread = null;
+            handler = new Handler(Looper.getMainLooper());
+        }
+        else{
+            this.threadingMode = THREADING_MODE_WORKER;
+            thread = new HandlerThread("IndoorAtlasPositioning", Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            handler = new Handler(thread.getLooper());
+        }
+    }
+
+    /**
+     * Returns the looper of the worker thread.
+     * @return
+     */
+    public Looper getLooper(){
+        return handler.getLooper();
+    }
+
+    /**
+     * Returns a handler for delayed work on the worker thread.
+     * @return
+     */
+    public Handler getHandler(){
+        return handler;
+    }
+
+    /**
+     * Returns true if the calling thread is the worker thread.
+     * @return
+     */
+    public boolean isCurrentThread(){
+        return Looper.myLooper() == handler.getLooper();
+    }
+
+    /**
+     * Runs a task on the worker thread, immediately if already called on it.
+     * @param task
+     */
+    public void execute(final Runnable task){
+        if (isCurrentThread()){
+            task.run();
+            return;
+        }
+        int depth = queueDepth.incrementAndGet();
+        int max = maxQueueDepth.get();
+        while (depth > max && !maxQueueDepth.compareAndSet(max, depth)){
+            max = maxQueueDepth.get();
+        }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                queueDepth.decrementAndGet();
+                executedTasks.incrementAndGet();
+                task.run();
+            }
+        });
+    }
+
+    /**
+     * Returns the threading mode and queue statistics.
+     * @return
+     * @throws JSONException
+     */
+    public JSONObject getStats() throws JSONException{
+        JSONObject stats = new JSONObject();
+        stats.put("threadingMode", threadingMode);
+        stats.put("queueDepth", queueDepth.get());
+        stats.put("maxQueueDepth", maxQueueDepth.get());
+        stats.put("executedTasks", executedTasks.get());
+        return stats;
+    }
+
+    /**
+     * Stops the worker thread. Pending work is dropped.
+     */
+    public void quit(){
+        handler.removeCallbacksAndMessages(null);
+        if (thread!=null){
+            thread.quit();
+        }
+    }
+}
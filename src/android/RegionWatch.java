@@ -0,0 +1,81 @@
+package com.ialocation.plugin;
+
+import org.apache.cordova.CallbackContext;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A single watchRegion subscription together with its region filters. A watch with region ids
+ * only gets transitions of those regions, and a watch with region types only gets transitions
+ * of regions of those types. A watch without filters gets every transition.
+ */
+public class RegionWatch {
+    private final String watchId;
+    private final CallbackContext callbackContext;
+    private final Set<String> regionIds;
+    private final Set<Integer> regionTypes;
+
+    /**
+     * The constructor
+     * @param watchId
+     * @param callbackContext
+     * @param options watchRegion options (regionIds, regionTypes), may be null
+     * @throws JSONException
+     */
+    public RegionWatch(String watchId, CallbackContext callbackContext, JSONObject options) throws JSONException{
+        JSONArray ids = options!=null ? options.optJSONArray("regionIds") : null;
+        JSONArray types = options!=null ? options.optJSONArray("regionTypes") : null;
+        this.watchId = watchId;
+        this.callbackContext = callbackContext;
+        if (ids!=null && ids.length() > 0){
+            HashSet<String> idSet = new HashSet<String>();
+            for (int i = 0; i < ids.length(); i++){
+                idSet.add(ids.getString(i));
+            }
+            regionIds = Collections.unmodifiableSet(idSet);
+        }
+        else{
+            regionIds = Collections.emptySet();
+        }
+        if (types!=null && types.length() > 0){
+            HashSet<Integer> typeSet = new HashSet<Integer>();
+            for (int i = 0; i < types.length(); i++){
+                typeSet.add(types.getInt(i));
+            }
+            regionTypes = Collections.unmodifiableSet(typeSet);
+        }
+        else{
+            regionTypes = Collections.emptySet();
+        }
+    }
+
+    public String getWatchId(){
+        return watchId;
+    }
+
+    public CallbackContext getCallbackContext(){
+        return callbackContext;
+    }
+
+    /**
+     * Returns the ids of the regions the watch is interested in, or an empty set for all regions.
+     * @return
+     */
+    public Set<String> getRegionIds(){
+        return regionIds;
+    }
+
+    /**
+     * Returns true if the watch wants transitions of regions of the given type.
+     * @param regionType
+     * @return
+     */
+    public boolean acceptsType(int regionType){
+        return regionTypes.isEmpty() || regionTypes.contains(regionType);
+    }
+}
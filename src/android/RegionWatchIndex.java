@@ -0,0 +1,65 @@
+package com.ialocation.plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Immutable index of region watches by the region ids they filter on, so that a transition is
+ * only matched against the watches interested in its region. Watches without an id filter are
+ * included in the list of every region.
+ * The index is built from a SubscriberRegistry snapshot and rebuilt when the snapshot changes;
+ * transitions are far more frequent than watchRegion calls in venues with many regions.
+ */
+public class RegionWatchIndex {
+    private final List<RegionWatch> source;
+    private final HashMap<String, List<RegionWatch>> byRegionId = new HashMap<String, List<RegionWatch>>();
+    private final List<RegionWatch> anyRegion;
+
+    /**
+     * The constructor
+     * @param watches a snapshot of the registered region watches
+     */
+    public RegionWatchIndex(List<RegionWatch> watches){
+        ArrayList<RegionWatch> unfiltered = new ArrayList<RegionWatch>();
+        List<RegionWatch> list;
+        source = watches;
+        for (RegionWatch watch : watches){
+            if (watch.getRegionIds().isEmpty()){
+                unfiltered.add(watch);
+            }
+        }
+        for (RegionWatch watch : watches){
+            for (String regionId : watch.getRegionIds()){
+                list = byRegionId.get(regionId);
+                if (list==null){
+                    list = new ArrayList<RegionWatch>(unfiltered);
+                    byRegionId.put(regionId, list);
+                }
+                list.add(watch);
+            }
+        }
+        anyRegion = Collections.unmodifiableList(unfiltered);
+    }
+
+    /**
+     * Returns true if the index was built from the given snapshot.
+     * @param watches
+     * @return
+     */
+    public boolean isBuiltFrom(List<RegionWatch> watches){
+        return source == watches;
+    }
+
+    /**
+     * Returns the watches which may want transitions of a region. Region type filters are
+     * left to the caller.
+     * @param regionId
+     * @return
+     */
+    public List<RegionWatch> getWatches(String regionId){
+        List<RegionWatch> list = regionId!=null ? byRegionId.get(regionId) : null;
+        return list!=null ? list : anyRegion;
+    }
+}
@@ -0,0 +1,122 @@
+package com.ialocation.plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Copy-on-write collection of subscribers keyed by id.
+ * Subscribers are added and removed from the WebView thread, the positioning thread and the
+ * timeout thread. Writers copy the collection under a lock and publish an immutable snapshot,
+ * so fan-out iterates the snapshot without locking and never sees a concurrent modification.
+ * Writes are rare compared to fixes, which makes the copying cheap in practice.
+ * @param <T> subscriber type
+ */
+public class SubscriberRegistry<T> {
+    private final Object writeLock = new Object();
+    private volatile Snapshot<T> snapshot = new Snapshot<T>(new HashMap<String, T>());
+
+    /**
+     * Adds a subscriber, replacing any subscriber with the same id.
+     * @param id
+     * @param subscriber
+     * @return the replaced subscriber, or null
+     */
+    public T put(String id, T subscriber){
+        synchronized (writeLock){
+            HashMap<String, T> map = new HashMap<String, T>(snapshot.map);
+            T previous = map.put(id, subscriber);
+            snapshot = new Snapshot<T>(map);
+            return previous;
+        }
+    }
+
+    /**
+     * Removes a subscriber.
+     * @param id
+     * @return the removed subscriber, or null if there was none
+     */
+    public T remove(String id){
+        synchronized (writeLock){
+            if (!snapshot.map.containsKey(id)){
+                return null;
+            }
+            HashMap<String, T> map = new HashMap<String, T>(snapshot.map);
+            T removed = map.remove(id);
+            snapshot = new Snapshot<T>(map);
+            return removed;
+        }
+    }
+
+    /**
+     * Removes a subscriber only if it is still registered with the given id.
+     * Of several threads racing to remove the same subscriber, exactly one succeeds.
+     * @param id
+     * @param subscriber
+     * @return true if the subscriber was removed
+     */
+    public boolean remove(String id, T subscriber){
+        synchronized (writeLock){
+            if (snapshot.map.get(id) != subscriber){
+                return false;
+            }
+            HashMap<String, T> map = new HashMap<String, T>(snapshot.map);
+            map.remove(id);
+            snapshot = new Snapshot<T>(map);
+            return true;
+        }
+    }
+
+    /**
+     * Removes all subscribers.
+     * @return the removed subscribers
+     */
+    public List<T> removeAll(){
+        synchronized (writeLock){
+            List<T> removed = snapshot.values;
+            if (!removed.isEmpty()){
+                snapshot = new Snapshot<T>(new HashMap<String, T>());
+            }
+            return removed;
+        }
+    }
+
+    /**
+     * Returns a subscriber by id, or null.
+     * @param id
+     * @return
+     */
+    public T get(String id){
+        return snapshot.map.get(id);
+    }
+
+    /**
+     * Returns an unmodifiable snapshot of the subscribers which is safe to iterate on any thread.
+     * @return
+     */
+    public List<T> values(){
+        return snapshot.values;
+    }
+
+    public int size(){
+        return snapshot.values.size();
+    }
+
+    public boolean isEmpty(){
+        return snapshot.values.isEmpty();
+    }
+
+    /**
+     * Immutable state of the registry.
+     */
+    private static class Snapshot<T> {
+        final HashMap<String, T> map;
+        final List<T> values;
+
+        Snapshot(HashMap<String, T> map){
+            this.map = map;
+            this.values = Collections.unmodifiableList(new ArrayList<T>(map.values()));
+        }
+    }
+}
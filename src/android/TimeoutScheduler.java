@@ -0,0 +1,48 @@
+package com.ialocation.plugin;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs getCurrentPosition and watchPosition timeouts, and the session linger stop, on a single
+ * thread shared by the whole process. Each scheduled timeout returns its own handle, so
+ * cancelling one request never affects the others.
+ * Tasks run on the timeout thread itself. They may remove their subscriber from the
+ * SubscriberRegistry collections, which are safe to modify from any thread, but must use the
+ * conditional remove so that a fix delivered at the same time answers the request at most once.
+ * Work which needs another thread, such as session control on the UI thread, is handed over to
+ * it. Tasks must be short and must not block, as every timeout in the process shares the thread.
+ */
+public final class TimeoutScheduler {
+    private static ScheduledThreadPoolExecutor sExecutor;
+
+    private TimeoutScheduler(){
+    }
+
+    /**
+     * Schedules a timeout.
+     * @param task
+     * @param timeoutMs
+     * @return handle which cancels the timeout
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long timeoutMs){
+        return getExecutor().schedule(task, timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor getExecutor(){
+        if (sExecutor==null){
+            sExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "IndoorAtlasTimeouts");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            sExecutor.setRemoveOnCancelPolicy(true);
+        }
+        return sExecutor;
+    }
+}
@@ -0,0 +1,326 @@
+package com.ialocation.plugin;
+
+import android.util.Log;
+
+import com.indooratlas.android.sdk.IALocation;
+import com.indooratlas.android.sdk.IARegion;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Records every fix and region transition into append-only binary trace files.
+ * All values are little-endian. Each file starts with a header and is self-contained:
+ *   header (8 bytes):  u8[4] magic "IATR", u16 version, u16 reserved
+ *   location record (RECORD_SIZE bytes):
+ *                      u8 type 1, u8 reserved, u16 reserved, i32 floor level,
+ *                      i64 timestamp, f64 latitude, f64 longitude, f64 altitude,
+ *                      f32 accuracy, f32 heading, f32 velocity, f32 floor certainty,
+ *                      i32 string index of the region id or -1, 4 bytes padding
+ *   region record (RECORD_SIZE bytes):
+ *                      u8 type 2, u8 transition type, u16 reserved, i32 region type,
+ *                      i64 timestamp, i32 string index of the region id,
+ *                      i32 string index of the region name or -1, zero padding
+ *   string record:     u8 type 3, u8 reserved, u16 UTF-8 byte length, i32 string index, UTF-8 bytes
+ * A string record defines an index before the first record which refers to it, so region ids
+ * are stored once per file however many fixes mention them.
+ * Records are collected in a buffer and written through a FileChannel when it fills up, so a
+ * day of fixes costs a few hundred writes. A file which grows past maxFileBytes is closed and
+ * a new one started, and the oldest files beyond maxFiles are deleted.
+ * All methods are synchronized; recording happens on the positioning thread and control
+ * from the WebView thread.
+ */
+public class TraceRecorder {
+    private static final String TAG = "TraceRecorder";
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 8;
+    public static final int RECORD_SIZE = 64;
+    public static final int RECORD_LOCATION = 1;
+    public static final int RECORD_REGION = 2;
+    public static final int RECORD_STRING = 3;
+    public static final long DEFAULT_MAX_FILE_BYTES = 8L * 1024 * 1024;
+    public static final int DEFAULT_MAX_FILES = 8;
+    private static final String FILE_PREFIX = "trace-";
+    private static final String FILE_SUFFIX = ".iatrace";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_STRING_BYTES = BUFFER_SIZE - RECORD_SIZE;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File directory;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final HashMap<String, Integer> strings = new HashMap<String, Integer>();
+    private FileChannel channel;
+    private long fileBytes;
+
+    /**
+     * The constructor
+     * @param directory directory of the trace files
+     * @param maxFileBytes size after which a new file is started
+     * @param maxFiles number of files to keep
+     */
+    public TraceRecorder(File directory, long maxFileBytes, int maxFiles){
+        this.directory = directory;
+        this.maxFileBytes = Math.max(HEADER_SIZE + RECORD_SIZE, maxFileBytes);
+        this.maxFiles = Math.max(1, maxFiles);
+    }
+
+    /**
+     * Starts recording into a new file.
+     * @throws IOException
+     */
+    public synchronized void start() throws IOException{
+        if (channel==null){
+            openFile();
+        }
+    }
+
+    /**
+     * Writes out buffered records and stops recording.
+     */
+    public synchronized void stop(){
+        if (channel==null){
+            return;
+        }
+        try{
+            writeBuffer();
+        }
+        catch(IOException ex){
+            Log.e(TAG, ex.toString());
+        }
+        closeFile();
+    }
+
+    public synchronized boolean isRecording(){
+        return channel!=null;
+    }
+
+    /**
+     * Writes out buffered records so that the trace files are complete.
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException{
+        if (channel==null){
+            return;
+        }
+        writeBuffer();
+        if (fileBytes >= maxFileBytes){
+            closeFile();
+            openFile();
+        }
+    }
+
+    /**
+     * Records a fix.
+     * @param iaLocation
+     */
+    public synchronized void recordLocation(IALocation iaLocation){
+        int regionIndex = -1;
+        float velocity;
+        if (channel==null){
+            return;
+        }
+        try{
+            if (iaLocation.getRegion()!=null){
+                regionIndex = getStringIndex(iaLocation.getRegion().getId());
+            }
+            velocity = iaLocation.toLocation()!=null ? iaLocation.toLocation().getSpeed() : 0;
+            ensureCapacity(RECORD_SIZE);
+            int start = buffer.position();
+            buffer.put((byte) RECORD_LOCATION);
+            buffer.put((byte) 0);
+            buffer.putShort((short) 0);
+            buffer.putInt(iaLocation.getFloorLevel());
+            buffer.putLong(iaLocation.getTime());
+            buffer.putDouble(iaLocation.getLatitude());
+            buffer.putDouble(iaLocation.getLongitude());
+            buffer.putDouble(iaLocation.getAltitude());
+            buffer.putFloat(iaLocation.getAccuracy());
+            buffer.putFloat(iaLocation.getBearing());
+            buffer.putFloat(velocity);
+            buffer.putFloat(iaLocation.getFloorCertainty());
+            buffer.putInt(regionIndex);
+            padRecord(start);
+        }
+        catch(IOException ex){
+            onWriteError(ex);
+        }
+    }
+
+    /**
+     * Records a region transition.
+     * @param iaRegion
+     * @param transitionType
+     */
+    public synchronized void recordRegion(IARegion iaRegion, int transitionType){
+        int idIndex;
+        int nameIndex;
+        if (channel==null){
+            return;
+        }
+        try{
+            idIndex = getStringIndex(iaRegion.getId());
+            nameIndex = iaRegion.getName()!=null ? getStringIndex(iaRegion.getName()) : -1;
+            ensureCapacity(RECORD_SIZE);
+            int start = buffer.position();
+            buffer.put((byte) RECORD_REGION);
+            buffer.put((byte) transitionType);
+            buffer.putShort((short) 0);
+            buffer.putInt(iaRegion.getType());
+            buffer.putLong(iaRegion.getTimestamp());
+            buffer.putInt(idIndex);
+            buffer.putInt(nameIndex);
+            padRecord(start);
+        }
+        catch(IOException ex){
+            onWriteError(ex);
+        }
+    }
+
+    /**
+     * Returns the trace files in a directory, oldest first.
+     * @param directory
+     * @return
+     */
+    public static List<File> getTraceFiles(File directory){
+        ArrayList<File> traceFiles = new ArrayList<File>();
+        File[] files = directory.listFiles();
+        if (files==null){
+            return traceFiles;
+        }
+        Arrays.sort(files);
+        for (File file : files){
+            if (file.getName().startsWith(FILE_PREFIX) && file.getName().endsWith(FILE_SUFFIX)){
+                traceFiles.add(file);
+            }
+        }
+        return traceFiles;
+    }
+
+    /**
+     * Returns the index of a string, first adding a string record for it if this file does
+     * not have one yet.
+     */
+    private int getStringIndex(String value) throws IOException{
+        byte[] bytes;
+        Integer index;
+        if (value==null){
+            return -1;
+        }
+        index = strings.get(value);
+        if (index!=null){
+            return index;
+        }
+        bytes = value.getBytes(UTF_8);
+        if (bytes.length > MAX_STRING_BYTES){
+            bytes = Arrays.copyOf(bytes, MAX_STRING_BYTES);
+        }
+        ensureCapacity(8 + bytes.length);
+        index = strings.size();
+        buffer.put((byte) RECORD_STRING);
+        buffer.put((byte) 0);
+        buffer.putShort((short) bytes.length);
+        buffer.putInt(index);
+        buffer.put(bytes);
+        strings.put(value, index);
+        return index;
+    }
+
+    /**
+     * Makes room in the buffer for a record. Does not rotate the file, so that a string
+     * record always ends up in the same file as the record which refers to it.
+     */
+    private void ensureCapacity(int length) throws IOException{
+        if (buffer.remaining() < length){
+            writeBuffer();
+        }
+    }
+
+    private void writeBuffer() throws IOException{
+        buffer.flip();
+        while (buffer.hasRemaining()){
+            fileBytes += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void padRecord(int start){
+        while (buffer.position() < start + RECORD_SIZE){
+            buffer.put((byte) 0);
+        }
+        if (fileBytes + buffer.position() >= maxFileBytes){
+            try{
+                flush();
+            }
+            catch(IOException ex){
+                onWriteError(ex);
+            }
+        }
+    }
+
+    private void openFile() throws IOException{
+        List<File> files;
+        File file;
+        if (!directory.isDirectory() && !directory.mkdirs()){
+            throw new IOException("Cannot create " + directory);
+        }
+        files = getTraceFiles(directory);
+        for (int i = 0; i <= files.size() - maxFiles; i++){
+            files.get(i).delete();
+        }
+        file = createFile(System.currentTimeMillis());
+        channel = new FileOutputStream(file).getChannel();
+        fileBytes = 0;
+        strings.clear();
+        buffer.clear();
+        buffer.put(new byte[]{'I', 'A', 'T', 'R'});
+        buffer.putShort((short) VERSION);
+        buffer.putShort((short) 0);
+    }
+
+    /**
+     * Creates a new, empty trace file. A file started in the same millisecond as an existing
+     * one gets a sequence suffix, so a file is never reopened and appended to.
+     * @param time
+     * @return
+     * @throws IOException
+     */
+    private File createFile(long time) throws IOException{
+        File file;
+        // Zero padded so that file names sort in creation order; "." sorts before "_"
+        String name = String.format("%s%015d", FILE_PREFIX, time);
+        file = new File(directory, name + FILE_SUFFIX);
+        for (int sequence = 1; !file.createNewFile(); sequence++){
+            file = new File(directory, String.format("%s_%03d%s", name, sequence, FILE_SUFFIX));
+        }
+        return file;
+    }
+
+    private void closeFile(){
+        try{
+            channel.close();
+        }
+        catch(IOException ex){
+            Log.e(TAG, ex.toString());
+        }
+        channel = null;
+        buffer.clear();
+    }
+
+    private void onWriteError(IOException ex){
+        Log.e(TAG, "Trace recording stopped: " + ex.toString());
+        if (channel!=null){
+            closeFile();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.ialocation.plugin;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.indooratlas.android.sdk.IALocation;
+import com.indooratlas.android.sdk.IALocationListener;
+import com.indooratlas.android.sdk.IALocationRequest;
+import com.indooratlas.android.sdk.IARegion;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * LocationSource which replays trace files written by TraceRecorder instead of positioning.
+ * Needs no venue, API key or network, so fan-out, throttling and delivery can be load tested
+ * and performance regressions reproduced from the same input.
+ * Records are replayed on a dedicated thread at the recorded pace multiplied by speed, or as
+ * fast as possible when speed is 0. Fix times are shifted so that the first fix of the trace
+ * is stamped with the time replay started; intervals between fixes are kept as recorded, so
+ * time based watch options behave the same at any replay speed.
+ * Replay starts with the first registered listener and runs until the trace ends or the
+ * source is destroyed. Records arriving while no listener is registered are dropped. Speed
+ * and region names are not part of the replayed fixes.
+ */
+public class TraceReplaySource implements LocationSource {
+    private static final String TAG = "TraceReplaySource";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final List<File> files;
+    private final double speed;
+    private final boolean loop;
+    private volatile IALocationListener locationListener;
+    private volatile Handler locationHandler;
+    private volatile IARegion.Listener regionListener;
+    private volatile boolean destroyed = false;
+    private Thread thread;
+    private long traceStartTime;
+    private long replayStartTime;
+    private long timeOffset;
+
+    /**
+     * The constructor
+     * @param files trace files in the order they are replayed
+     * @param speed multiplier of the recorded pace, or 0 to replay as fast as possible
+     * @param loop if true, the trace is replayed again from the start when it ends
+     */
+    public TraceReplaySource(List<File> files, double speed, boolean loop){
+        this.files = files;
+        this.speed = Math.max(0, speed);
+        this.loop = loop;
+    }
+
+    @Override
+    public void requestLocationUpdates(IALocationRequest request, IALocationListener listener, Looper looper){
+        locationHandler = looper!=null ? new Handler(looper) : null;
+        locationListener = listener;
+        startReplay();
+    }
+
+    @Override
+    public void removeLocationUpdates(IALocationListener listener){
+        if (locationListener == listener){
+            locationListener = null;
+        }
+    }
+
+    @Override
+    public void registerRegionListener(IARegion.Listener listener){
+        regionListener = listener;
+        startReplay();
+    }
+
+    @Override
+    public void unregisterRegionListener(IARegion.Listener listener){
+        if (regionListener == listener){
+            regionListener = null;
+        }
+    }
+
+    @Override
+    public void setLocation(IALocation location){
+        Log.d(TAG, "Explicit position ignored during replay");
+    }
+
+    @Override
+    public synchronized void destroy(){
+        destroyed = true;
+        locationListener = null;
+        regionListener = null;
+        if (thread!=null){
+            thread.interrupt();
+        }
+    }
+
+    private synchronized void startReplay(){
+        if (thread!=null || destroyed){
+            return;
+        }
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try{
+                    do{
+                        traceStartTime = -1;
+                        for (File file : files){
+                            replayFile(file);
+                        }
+                    }
+                    while (loop && !destroyed);
+                    Log.d(TAG, "Replay finished");
+                }
+                catch(InterruptedException ex){
+                    Log.d(TAG, "Replay stopped");
+                }
+            }
+        }, "IndoorAtlasReplay");
+        thread.start();
+    }
+
+    private void replayFile(File file) throws InterruptedException{
+        HashMap<Integer, String> strings = new HashMap<Integer, String>();
+        ByteBuffer buffer;
+        byte[] bytes;
+        int start;
+        int type;
+        try{
+            buffer = readFile(file);
+        }
+        catch(IOException ex){
+            Log.e(TAG, ex.toString());
+            return;
+        }
+        if (buffer.remaining() < TraceRecorder.HEADER_SIZE || buffer.get(0) != 'I' || buffer.get(1) != 'A'
+                || buffer.get(2) != 'T' || buffer.get(3) != 'R'){
+            Log.e(TAG, "Not a trace file: " + file);
+            return;
+        }
+        buffer.position(TraceRecorder.HEADER_SIZE);
+        while (buffer.remaining() >= 8 && !destroyed){
+            start = buffer.position();
+            type = buffer.get(start) & 0xff;
+            if (type == TraceRecorder.RECORD_STRING){
+                buffer.position(start + 2);
+                int length = buffer.getShort() & 0xffff;
+                int index = buffer.getInt();
+                if (buffer.remaining() < length){
+                    break;
+                }
+                bytes = new byte[length];
+                buffer.get(bytes);
+                strings.put(index, new String(bytes, UTF_8));
+                continue;
+            }
+            if (buffer.remaining() < TraceRecorder.RECORD_SIZE){
+                break;
+            }
+            if (type == TraceRecorder.RECORD_LOCATION){
+                replayLocation(buffer, start, strings);
+            }
+            else if (type == TraceRecorder.RECORD_REGION){
+                replayRegion(buffer, start, strings);
+            }
+            else{
+                Log.w(TAG, "Unknown trace record type " + type);
+            }
+            buffer.position(start + TraceRecorder.RECORD_SIZE);
+        }
+    }
+
+    private void replayLocation(ByteBuffer buffer, int start, HashMap<Integer, String> strings) throws InterruptedException{
+        final IALocation iaLocation;
+        final IALocationListener listener;
+        IALocation.Builder builder = new IALocation.Builder();
+        long time = buffer.getLong(start + 8);
+        String regionId = strings.get(buffer.getInt(start + 56));
+        waitFor(time);
+        builder.withFloorLevel(buffer.getInt(start + 4))
+                .withTime(time + timeOffset)
+                .withLatitude(buffer.getDouble(start + 16))
+                .withLongitude(buffer.getDouble(start + 24))
+                .withAltitude(buffer.getDouble(start + 32))
+                .withAccuracy(buffer.getFloat(start + 40))
+                .withBearing(buffer.getFloat(start + 44));
+        if (regionId!=null){
+            builder.withRegion(IARegion.floorPlan(regionId));
+        }
+        iaLocation = builder.build();
+        listener = locationListener;
+        if (listener==null){
+            return;
+        }
+        Handler handler = locationHandler;
+        if (handler!=null){
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onLocationChanged(iaLocation);
+                }
+            });
+        }
+        else{
+            listener.onLocationChanged(iaLocation);
+        }
+    }
+
+    private void replayRegion(ByteBuffer buffer, int start, HashMap<Integer, String> strings) throws InterruptedException{
+        int transitionType = buffer.get(start + 1) & 0xff;
+        int regionType = buffer.getInt(start + 4);
+        long time = buffer.getLong(start + 8);
+        String regionId = strings.get(buffer.getInt(start + 16));
+        IARegion.Listener listener;
+        IARegion iaRegion;
+        if (time > 0){
+            waitFor(time);
+        }
+        listener = regionListener;
+        if (listener==null || regionId==null){
+            return;
+        }
+        iaRegion = regionType == IARegion.TYPE_VENUE ? IARegion.venue(regionId) : IARegion.floorPlan(regionId);
+        if (transitionType == IndoorLocationListener.TRANSITION_TYPE_ENTER){
+            listener.onEnterRegion(iaRegion);
+        }
+        else if (transitionType == IndoorLocationListener.TRANSITION_TYPE_EXIT){
+            listener.onExitRegion(iaRegion);
+        }
+    }
+
+    /**
+     * Sleeps until a record's time has come at the replay speed.
+     * @param time recorded time of the record
+     */
+    private void waitFor(long time) throws InterruptedException{
+        long delay;
+        if (traceStartTime < 0){
+            traceStartTime = time;
+            replayStartTime = SystemClock.elapsedRealtime();
+            timeOffset = System.currentTimeMillis() - time;
+        }
+        if (speed <= 0){
+            return;
+        }
+        delay = replayStartTime + (long) ((time - traceStartTime) / speed) - SystemClock.elapsedRealtime();
+        if (delay > 0){
+            Thread.sleep(delay);
+        }
+    }
+
+    private static ByteBuffer readFile(File file) throws IOException{
+        FileInputStream in = new FileInputStream(file);
+        try{
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining()){
+                if (channel.read(buffer) == -1){
+                    break;
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+        finally{
+            in.close();
+        }
+    }
+}
@@ -104,6 +104,82 @@ exports.defineAutoTests = function () {
       expect(typeof IndoorAtlas.clearRegionWatch).toBeDefined();
       expect(typeof IndoorAtlas.clearRegionWatch == 'function').toBe(true);
     });
+    it("test.spec.20 should contain a fetchFloorPlanImage function", function () {
+      expect(typeof IndoorAtlas.fetchFloorPlanImage).toBeDefined();
+      expect(typeof IndoorAtlas.fetchFloorPlanImage == 'function').toBe(true);
+    });
+    it("test.spec.21 should contain a startTrace function", function () {
+      expect(typeof IndoorAtlas.startTrace).toBeDefined();
+      expect(typeof IndoorAtlas.startTrace == 'function').toBe(true);
+    });
+    it("test.spec.22 should contain a stopTrace function", function () {
+      expect(typeof IndoorAtlas.stopTrace).toBeDefined();
+      expect(typeof IndoorAtlas.stopTrace == 'function').toBe(true);
+    });
+    it("test.spec.23 should contain a exportTrace function", function () {
+      expect(typeof IndoorAtlas.exportTrace).toBeDefined();
+      expect(typeof IndoorAtlas.exportTrace == 'function').toBe(true);
+    });
+    it("test.spec.24 should contain a startReplay function", function () {
+      expect(typeof IndoorAtlas.startReplay).toBeDefined();
+      expect(typeof IndoorAtlas.startReplay == 'function').toBe(true);
+    });
+    it("test.spec.25 should contain a stopReplay function", function () {
+      expect(typeof IndoorAtlas.stopReplay).toBeDefined();
+      expect(typeof IndoorAtlas.stopReplay == 'function').toBe(true);
+    });
+    it("test.spec.26 should contain a getMetrics function", function () {
+      expect(typeof IndoorAtlas.getMetrics).toBeDefined();
+      expect(typeof IndoorAtlas.getMetrics == 'function').toBe(true);
+    });
+    it("test.spec.27 should contain a addGeofences function", function () {
+      expect(typeof IndoorAtlas.addGeofences).toBeDefined();
+      expect(typeof IndoorAtlas.addGeofences == 'function').toBe(true);
+    });
+    it("test.spec.28 should contain a removeGeofences function", function () {
+      expect(typeof IndoorAtlas.removeGeofences).toBeDefined();
+      expect(typeof IndoorAtlas.removeGeofences == 'function').toBe(true);
+    });
+    it("test.spec.29 should contain a coordinatesToPixels function", function () {
+      expect(typeof IndoorAtlas.coordinatesToPixels).toBeDefined();
+      expect(typeof IndoorAtlas.coordinatesToPixels == 'function').toBe(true);
+    });
+    it("test.spec.30 should contain a pixelsToCoordinates function", function () {
+      expect(typeof IndoorAtlas.pixelsToCoordinates).toBeDefined();
+      expect(typeof IndoorAtlas.pixelsToCoordinates == 'function').toBe(true);
+    });
+    it("test.spec.31 should contain a setPixelFloorPlan function", function () {
+      expect(typeof IndoorAtlas.setPixelFloorPlan).toBeDefined();
+      expect(typeof IndoorAtlas.setPixelFloorPlan == 'function').toBe(true);
+    });
+    it("test.spec.32 should contain a startBackgroundService function", function () {
+      expect(typeof IndoorAtlas.startBackgroundService).toBeDefined();
+      expect(typeof IndoorAtlas.startBackgroundService == 'function').toBe(true);
+    });
+    it("test.spec.33 should contain a stopBackgroundService function", function () {
+      expect(typeof IndoorAtlas.stopBackgroundService).toBeDefined();
+      expect(typeof IndoorAtlas.stopBackgroundService == 'function').toBe(true);
+    });
+    it("test.spec.34 should contain a startHistory function", function () {
+      expect(typeof IndoorAtlas.startHistory).toBeDefined();
+      expect(typeof IndoorAtlas.startHistory == 'function').toBe(true);
+    });
+    it("test.spec.35 should contain a stopHistory function", function () {
+      expect(typeof IndoorAtlas.stopHistory).toBeDefined();
+      expect(typeof IndoorAtlas.stopHistory == 'function').toBe(true);
+    });
+    it("test.spec.36 should contain a getPositionHistory function", function () {
+      expect(typeof IndoorAtlas.getPositionHistory).toBeDefined();
+      expect(typeof IndoorAtlas.getPositionHistory == 'function').toBe(true);
+    });
+    it("test.spec.37 should contain a exportHistory function", function () {
+      expect(typeof IndoorAtlas.exportHistory).toBeDefined();
+      expect(typeof IndoorAtlas.exportHistory == 'function').toBe(true);
+    });
+    it("test.spec.38 should contain a getWorkerStats function", function () {
+      expect(typeof IndoorAtlas.getWorkerStats).toBeDefined();
+      expect(typeof IndoorAtlas.getWorkerStats == 'function').toBe(true);
+    });
   });
 
   describe('getCurrentPosition method', function () {
@@ -9,7 +9,7 @@
  * @param {Object} altacc
  * @constructor
  */
-var Coordinates = function(lat, lng, alt, acc, head, vel,flr) {
+var Coordinates = function(lat, lng, alt, acc, head, vel,flr, x, y) {
     /**
     * The latitude of the position.
     */
@@ -45,6 +45,12 @@ var Coordinates = function(lat, lng, alt, acc, head, vel,flr) {
     */
     this.floor = flr;
 
+    /**
+    * The pixel coordinates of the position on the floor plan set with setPixelFloorPlan.
+    */
+    this.x = (x !== undefined ? x : null);
+    this.y = (y !== undefined ? y : null);
+
     /**
     * The floor plan of the position.
     */
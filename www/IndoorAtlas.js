@@ -10,6 +10,11 @@ function getDeviceType(){
     return deviceType;
 }
 
+// Android runs getCurrentPosition and watchPosition timeouts, and the maximumAge check, natively
+function hasNativeTimeouts(){
+    return getDeviceType() == 'Android';
+}
+
 function parseSetPositionParameters(options){
     var opt = {
         regionId:'',
@@ -39,10 +44,192 @@ function parseParameters(options){
                 opt.timeout = options.timeout;
             }
         }
+        if (options.maximumAge !== undefined && !isNaN(options.maximumAge)) {
+            opt.maximumAge = options.maximumAge < 0 ? 0 : options.maximumAge;
+        }
+        if (options.floorPlan !== undefined) {
+            opt.floorPlan = options.floorPlan;
+        }
+        if (options.minIntervalMs !== undefined && !isNaN(options.minIntervalMs)) {
+            opt.minIntervalMs = options.minIntervalMs;
+        }
+        if (options.minDistanceMeters !== undefined && !isNaN(options.minDistanceMeters)) {
+            opt.minDistanceMeters = options.minDistanceMeters;
+        }
+        if (options.maxAccuracyMeters !== undefined && !isNaN(options.maxAccuracyMeters)) {
+            opt.maxAccuracyMeters = options.maxAccuracyMeters;
+        }
+        if (options.fastestInterval !== undefined && !isNaN(options.fastestInterval)) {
+            opt.fastestInterval = options.fastestInterval;
+        }
+        if (options.smallestDisplacement !== undefined && !isNaN(options.smallestDisplacement)) {
+            opt.smallestDisplacement = options.smallestDisplacement;
+        }
+        if (options.backgroundPolicy !== undefined) {
+            opt.backgroundPolicy = options.backgroundPolicy;
+        }
+        if (options.backgroundIntervalMs !== undefined && !isNaN(options.backgroundIntervalMs)) {
+            opt.backgroundIntervalMs = options.backgroundIntervalMs;
+        }
+        if (options.backgroundBufferSize !== undefined && !isNaN(options.backgroundBufferSize)) {
+            opt.backgroundBufferSize = options.backgroundBufferSize;
+        }
+        if (options.batch) {
+            opt.batch = options.batch;
+        }
+        if (options.interpolation) {
+            opt.interpolation = options.interpolation;
+        }
+        if (options.format !== undefined) {
+            opt.format = options.format;
+        }
     }
     return opt;
 }
 
+// Options which are enforced natively per watch before a position is sent to JS
+function getWatchOptions(options){
+    var watchOptions = {};
+    if (options.minIntervalMs !== undefined) {
+        watchOptions.minIntervalMs = options.minIntervalMs;
+    }
+    if (options.minDistanceMeters !== undefined) {
+        watchOptions.minDistanceMeters = options.minDistanceMeters;
+    }
+    if (options.maxAccuracyMeters !== undefined) {
+        watchOptions.maxAccuracyMeters = options.maxAccuracyMeters;
+    }
+    if (options.fastestInterval !== undefined) {
+        watchOptions.fastestInterval = options.fastestInterval;
+    }
+    if (options.smallestDisplacement !== undefined) {
+        watchOptions.smallestDisplacement = options.smallestDisplacement;
+    }
+    if (options.backgroundPolicy !== undefined) {
+        watchOptions.backgroundPolicy = options.backgroundPolicy;
+    }
+    if (options.backgroundIntervalMs !== undefined) {
+        watchOptions.backgroundIntervalMs = options.backgroundIntervalMs;
+    }
+    if (options.backgroundBufferSize !== undefined) {
+        watchOptions.backgroundBufferSize = options.backgroundBufferSize;
+    }
+    if (options.format === 'binary') {
+        watchOptions.format = 'binary';
+    }
+    if (hasNativeTimeouts() && options.timeout !== Infinity) {
+        watchOptions.timeout = options.timeout;
+    }
+    if (options.interpolation) {
+        watchOptions.interpolation = {};
+        if (options.interpolation.rateHz !== undefined && !isNaN(options.interpolation.rateHz)) {
+            watchOptions.interpolation.rateHz = options.interpolation.rateHz;
+        }
+        if (options.interpolation.batchMs !== undefined && !isNaN(options.interpolation.batchMs)) {
+            watchOptions.interpolation.batchMs = options.interpolation.batchMs;
+        }
+    }
+    if (options.batch) {
+        watchOptions.batch = {};
+        if (options.batch.maxFixes !== undefined && !isNaN(options.batch.maxFixes)) {
+            watchOptions.batch.maxFixes = options.batch.maxFixes;
+        }
+        if (options.batch.maxLatencyMs !== undefined && !isNaN(options.batch.maxLatencyMs)) {
+            watchOptions.batch.maxLatencyMs = options.batch.maxLatencyMs;
+        }
+    }
+    return watchOptions;
+}
+
+// Location request hints which are combined natively across all subscribers
+function getRequestHints(options){
+    var hints = {};
+    if (options.fastestInterval !== undefined) {
+        hints.fastestInterval = options.fastestInterval;
+    }
+    if (options.smallestDisplacement !== undefined) {
+        hints.smallestDisplacement = options.smallestDisplacement;
+    }
+    return hints;
+}
+
+function createPosition(p){
+    return new Position(
+        {
+            latitude:p.latitude,
+            longitude:p.longitude,
+            altitude:p.altitude,
+            accuracy:p.accuracy,
+            heading:p.heading,
+            velocity:p.velocity,
+            flr:p.flr,
+            x:p.x,
+            y:p.y
+        },
+        p.region,
+        p.timestamp
+    );
+}
+
+// Layout of the binary position format, see BinaryLocationEncoder.java
+var BINARY_FORMAT_VERSION = 1;
+var BINARY_HEADER_SIZE = 8;
+var BINARY_RECORD_SIZE = 56;
+
+function decodeUtf8(bytes){
+    if (typeof TextDecoder !== 'undefined') {
+        return new TextDecoder('utf-8').decode(bytes);
+    }
+    var s = '';
+    for (var i = 0; i < bytes.length; i++) {
+        s += String.fromCharCode(bytes[i]);
+    }
+    return decodeURIComponent(escape(s));
+}
+
+// Decodes an ArrayBuffer written by BinaryLocationEncoder into a list of Position objects
+function decodePositions(buffer){
+    var view = new DataView(buffer);
+    if (view.getUint8(0) !== BINARY_FORMAT_VERSION) {
+        throw new Error('Unsupported position format version ' + view.getUint8(0));
+    }
+    var count = view.getUint16(2, true);
+    var regionCount = view.getUint16(4, true);
+    var offset = BINARY_HEADER_SIZE + count * BINARY_RECORD_SIZE;
+    var regions = [];
+    var i, idLength;
+    for (i = 0; i < regionCount; i++) {
+        idLength = view.getUint16(offset + 12, true);
+        regions.push({
+            regionType:view.getInt32(offset, true),
+            timestamp:view.getFloat64(offset + 4, true),
+            regionId:decodeUtf8(new Uint8Array(buffer, offset + 14, idLength)),
+            transitionType:Region.TRANSITION_TYPE_UNKNOWN
+        });
+        offset += 14 + idLength;
+    }
+    var positions = [];
+    var regionIndex;
+    for (i = 0; i < count; i++) {
+        offset = BINARY_HEADER_SIZE + i * BINARY_RECORD_SIZE;
+        regionIndex = view.getInt32(offset + 48, true);
+        positions.push(new Position(
+            {
+                latitude:view.getFloat64(offset, true),
+                longitude:view.getFloat64(offset + 8, true),
+                altitude:view.getFloat64(offset + 16, true),
+                accuracy:view.getFloat32(offset + 32, true),
+                heading:view.getFloat32(offset + 36, true),
+                velocity:view.getFloat32(offset + 40, true),
+                flr:view.getInt32(offset + 44, true)
+            },
+            regionIndex >= 0 ? regions[regionIndex] : null,
+            view.getFloat64(offset + 24, true)
+        ));
+    }
+    return positions;
+}
+
 function createTimeout(errorCallback, timeout) {
     var t = setTimeout(function() {
         clearTimeout(t);
@@ -107,19 +294,7 @@ var IndoorAtlas = {
                         // Don't continue with success callback.
                         return;
                     }
-                    var pos = new Position(
-                        {
-                            latitude:p.latitude,
-                            longitude:p.longitude,
-                            altitude:p.altitude,
-                            accuracy:p.accuracy,
-                            heading:p.heading,
-                            velocity:p.velocity,
-                            flr:p.flr
-                        },
-                        p.region,
-                        p.timestamp
-                    );
+                    var pos = createPosition(p);
                     IndoorAtlas.lastPosition = pos;
                     successCallback(pos);
                 }
@@ -137,8 +312,12 @@ var IndoorAtlas = {
                 }
             };
             // Check our cached position, if its timestamp difference with current time is less than the maximumAge, then just
-            // fire the success callback with the cached position.
-            if (IndoorAtlas.lastPosition && options.maximumAge && (((new Date()).getTime() - IndoorAtlas.lastPosition.timestamp) <= options.maximumAge)) {
+            // fire the success callback with the cached position. Android checks maximumAge and timeout natively.
+            if (hasNativeTimeouts()) {
+                timeoutTimer.timer = true;
+                exec(win, fail, "IndoorAtlas", "getLocation", [options.floorPlan, options.timeout === Infinity ? -1 : options.timeout,
+                    getRequestHints(options), options.maximumAge === undefined ? null : (options.maximumAge === Infinity ? -1 : options.maximumAge)]);
+            } else if (IndoorAtlas.lastPosition && options.maximumAge && (((new Date()).getTime() - IndoorAtlas.lastPosition.timestamp) <= options.maximumAge)) {
                 successCallback(IndoorAtlas.lastPosition);
             // If the cached position check failed and the timeout was set to 0, error out with a TIMEOUT error object.
             } else if (options.timeout === 0) {
@@ -159,13 +338,15 @@ var IndoorAtlas = {
                     // always truthy before we call into native
                     timeoutTimer.timer = true;
                 }
-                exec(win, fail, "IndoorAtlas", "getLocation", [options.floorPlan]);
+                exec(win, fail, "IndoorAtlas", "getLocation", [options.floorPlan, options.timeout === Infinity ? -1 : options.timeout, getRequestHints(options)]);
             }
             return timeoutTimer;
         }
         catch(error){alert(error);}
     },
-    watchRegion:function(onEnterRegion,onExitRegion,errorCallback){
+    // onDwellRegion is optional and called when the user has stayed in a geofence for its dwellMs.
+    // options may limit the watch to {regionIds: [...], regionTypes: [...]}, which is checked natively.
+    watchRegion:function(onEnterRegion,onExitRegion,errorCallback,onDwellRegion,options){
         var id = utils.createUUID();
 
         var fail = function(e) {
@@ -176,18 +357,49 @@ var IndoorAtlas = {
         };
 
         var win = function(r){
-            var region = new Region(r.regionId,r.timestamp,r.regionType,r.transitionType);
+            var region = new Region(r.regionId,r.timestamp,r.regionType,r.transitionType,r.name);
             if (region.transitionType==Region.TRANSITION_TYPE_ENTER){
                 onEnterRegion(region);
             }
             if (region.transitionType==Region.TRANSITION_TYPE_EXIT){
                 onExitRegion(region);
             }
+            if (region.transitionType==Region.TRANSITION_TYPE_DWELL && onDwellRegion){
+                onDwellRegion(region);
+            }
         };
 
-        exec(win, fail, "IndoorAtlas", "addRegionWatch", [id]);
+        var filters = {};
+        if (options && options.regionIds) {
+            filters.regionIds = options.regionIds;
+        }
+        if (options && options.regionTypes) {
+            filters.regionTypes = options.regionTypes;
+        }
+        exec(win, fail, "IndoorAtlas", "addRegionWatch", [id, filters]);
         return id;
     },
+    // Registers polygon geofences evaluated natively on each fix (Android). Each geofence is
+    // {id, name, floorPlanId or floor, dwellMs, vertices: [[latitude, longitude], ...]}
+    addGeofences:function(geofences,successCallback,errorCallback){
+        var fail = function(e){
+            var err = new PositionError(e.code, e.message);
+            if (errorCallback) {
+                errorCallback(err);
+            }
+        };
+        exec(successCallback, fail, "IndoorAtlas", "addGeofences", [geofences]);
+    },
+    // Removes the geofences with the given ids, or all geofences if ids is not given
+    removeGeofences:function(ids,successCallback,errorCallback){
+        var fail = function(e){
+            var err = new PositionError(e.code, e.message);
+            if (errorCallback) {
+                errorCallback(err);
+            }
+        };
+        exec(successCallback, fail, "IndoorAtlas", "removeGeofences", ids ? [ids] : []);
+    },
     clearRegionWatch:function(watchId){
         try{
             exec(
@@ -206,8 +418,14 @@ var IndoorAtlas = {
 
         var id = utils.createUUID();
 
-        // Tell device to get a position ASAP, and also retrieve a reference to the timeout timer generated in getCurrentPosition
-        timers[id] = IndoorAtlas.getCurrentPosition(successCallback, errorCallback, options);
+        if (hasNativeTimeouts()) {
+            // The native watch times out the first position as well, and its first accepted fix
+            // goes through the watch's filters and format like every other one
+            timers[id] = {timer:null};
+        } else {
+            // Tell device to get a position ASAP, and also retrieve a reference to the timeout timer generated in getCurrentPosition
+            timers[id] = IndoorAtlas.getCurrentPosition(successCallback, errorCallback, options);
+        }
 
         var fail = function(e) {
             clearTimeout(timers[id].timer);
@@ -218,27 +436,45 @@ var IndoorAtlas = {
         };
 
         var win = function(p) {
+            if (p && p.samples) {
+                // Predicted positions of a watch with interpolation, as a flat
+                // [timestamp, latitude, longitude, ...] array
+                if (options.interpolation && typeof options.interpolation.callback == 'function') {
+                    options.interpolation.callback(p.samples, p.floor);
+                }
+                return;
+            }
             clearTimeout(timers[id].timer);
-            if (options.timeout !== Infinity) {
+            if (options.timeout !== Infinity && !hasNativeTimeouts()) {
                 timers[id].timer = createTimeout(fail, options.timeout);
             }
-            var pos = new Position(
-                {
-                    latitude:p.latitude,
-                    longitude:p.longitude,
-                    altitude:p.altitude,
-                    accuracy:p.accuracy,
-                    heading:p.heading,
-                    velocity:p.velocity,
-                    flr:p.flr
-                },
-                p.region,
-                p.timestamp
-            );
+            var positions = null;
+            if (p instanceof ArrayBuffer) {
+                positions = decodePositions(p);
+            } else if (Array.isArray(p)) {
+                positions = p.map(createPosition);
+            }
+            if (positions) {
+                // Batched or binary delivery: hand the whole batch to the batch callback if
+                // one was given, otherwise fan the positions out to the success callback.
+                if (positions.length === 0) {
+                    return;
+                }
+                IndoorAtlas.lastPosition = positions[positions.length - 1];
+                if (options.batch && typeof options.batch.callback == 'function') {
+                    options.batch.callback(positions);
+                } else {
+                    positions.forEach(function(pos) {
+                        successCallback(pos);
+                    });
+                }
+                return;
+            }
+            var pos = createPosition(p);
             IndoorAtlas.lastPosition = pos;
             successCallback(pos);
         };
-        exec(win, fail, "IndoorAtlas", "addWatch", [id, options.floorPlan]);
+        exec(win, fail, "IndoorAtlas", "addWatch", [id, options.floorPlan, getWatchOptions(options)]);
         return id;
     },
     clearWatch:function(watchId){
@@ -267,7 +503,7 @@ var IndoorAtlas = {
         };
         exec(win, fail, "IndoorAtlas", "setPosition", [options.regionId,options.coordinates]);
     },
-    fetchFloorPlanWithId:function(floorplanId,successCallback,errorCallback){
+    fetchFloorPlanWithId:function(floorplanId,successCallback,errorCallback,options){
         var win = function(p){
             var floorplan = new FloorPlan(
                 p.id,
@@ -294,7 +530,254 @@ var IndoorAtlas = {
                 errorCallback(err);
             }
         };
-        exec(win, fail, "IndoorAtlas", "fetchFloorplan", [floorplanId]);
+        var fetchOptions = {};
+        if (options && options.latestWins) {
+            // Cancel the previous latestWins request instead of fetching concurrently
+            fetchOptions.latestWins = true;
+        }
+        if (options && options.maxAge !== undefined && !isNaN(options.maxAge)) {
+            // Oldest cached floor plan, in milliseconds, which is returned without a network call
+            fetchOptions.maxAge = options.maxAge;
+        }
+        if (options && options.staleWhileRevalidate) {
+            // Return an older cached floor plan immediately and refresh it in the background
+            fetchOptions.staleWhileRevalidate = true;
+        }
+        exec(win, fail, "IndoorAtlas", "fetchFloorplan", [floorplanId, fetchOptions]);
+    },
+    // Converts a flat [latitude, longitude, ...] array to floor plan pixels [x, y, ...] (Android).
+    // The floor plan must have been fetched with fetchFloorPlanWithId.
+    coordinatesToPixels:function(floorPlanId,coordinates,successCallback,errorCallback){
+        var fail = function(e){
+            var err = new PositionError(e.code, e.message);
+            if (errorCallback) {
+                errorCallback(err);
+            }
+        };
+        exec(successCallback, fail, "IndoorAtlas", "coordinatesToPixels", [floorPlanId, coordinates]);
+    },
+    // Converts a flat [x, y, ...] array of floor plan pixels to [latitude, longitude, ...] (Android)
+    pixelsToCoordinates:function(floorPlanId,pixels,successCallback,errorCallback){
+        var fail = function(e){
+            var err = new PositionError(e.code, e.message);
+            if (errorCallback) {
+                errorCallback(err);
+            }
+        };
+        exec(successCallback, fail, "IndoorAtlas", "pixelsToCoordinates", [floorPlanId, pixels]);
+    },
+    // Adds x and y pixels on the given floor plan to positions on it, or stops with null (Android)
+    setPixelFloorPlan:function(floorPlanId,successCallback,errorCallback){
+        var fail = function(e){
+            var err = new PositionError(e.code, e.message);
+            if (errorCallback) {
+                errorCallback(err);
+            }
+        };
+        exec(successCallback, fail, "IndoorAtlas", "setPixelFloorPlan", [floorPlanId || null]);
+    },
+    fetchFloorPlanImage:function(floorPlan,successCallback,errorCallback,options){
+        var maxDimension = 0;
+        if (options && options.maxDimension !== undefined && !isNaN(options.maxDimension)) {
+            // Largest width or height of the returned image, the image is downsampled natively
+            maxDimension = options.maxDimension;
+        }
+        var win = function(image){
+            successCallback(image);
+        };
+        var fail = function(e){
+            var err = new PositionError(e.code, e.message);
+            if (errorCallback) {
+                errorCallback(err);
+            }
+        };
+        exec(win, fail, "IndoorAtlas", "fetchFloorPlanImage",
+            [floorPlan.id, floorPlan.url, floorPlan.bitmapWidth, floorPlan.bitmapHeight, maxDimension]);
+    },
+    // Keeps positioning in background with a foreground service notification (Android).
+    // Positions and region transitions of the time in background are buffered natively and
+    // passed to onBatch({positions, regions, dropped}) when the app returns to foreground.
+    startBackgroundService:function(onBatch,errorCallback,options){
+        var fail = function(e){
+            var err = new PositionError(e.code, e.message);
+            if (errorCallback) {
+                errorCallback(err);
+            }
+        };
+        var win = function(b){
+            var positions = [];
+            var regions = [];
+            var i, r;
+            for (i = 0; i < b.positions.length; i++) {
+                positions.push(createPosition(b.positions[i]));
+            }
+            for (i = 0; i < b.regions.length; i++) {
+                r = b.regions[i];
+                regions.push(new Region(r.regionId,r.timestamp,r.regionType,r.transitionType,r.name));
+            }
+            onBatch({positions:positions, regions:regions, dropped:b.dropped});
+        };
+        exec(win, fail, "IndoorAtlas", "startBackgroundService", [options || {}]);
+    },
+    stopBackgroundService:function(successCallback,errorCallback){
+        var fail = function(e){
+            var err = new PositionError(e.code, e.message);
+            if (errorCallback) {
+                errorCallback(err);
+            }
+        };
+        exec(successCallback, fail, "IndoorAtlas", "stopBackgroundService", []);
+    },
+    // Persists every position and region transition natively (Android). options.retentionDays
+    // sets how long history is kept, 30 days by default
+    startHistory:function(successCallback,errorCallback,options){
+        var fail = function(e){
+            var err = new PositionError(e.code, e.message);
+            if (errorCallback) {
+                errorCallback(err);
+            }
+        };
+        exec(successCallback, fail, "IndoorAtlas", "startHistory", [options || {}]);
+    },
+    stopHistory:function(successCallback,errorCallback){
+        var fail = function(e){
+            var err = new PositionError(e.code, e.message);
+            if (errorCallback) {
+                errorCallback(err);
+            }
+        };
+        exec(successCallback, fail, "IndoorAtlas", "stopHistory", []);
+    },
+    // Returns stored positions between from and to (milliseconds since epoch), oldest first,
+    // optionally only on one floor plan and at most limit positions
+    getPositionHistory:function(from,to,floorPlanId,limit,successCallback,errorCallback){
+        var fail = function(e){
+            var err = new PositionError(e.code, e.message);
+            if (errorCallback) {
+                errorCallback(err);
+            }
+        };
+        var win = function(h){
+            var positions = [];
+            for (var i = 0; i < h.length; i++) {
+                positions.push(createPosition(h[i]));
+            }
+            successCallback(positions);
+        };
+        exec(win, fail, "IndoorAtlas", "getPositionHistory", [from || 0, to === undefined ? null : to, floorPlanId || null, limit || 0]);
+    },
+    // Returns one page {positions, regions, cursor} of stored history. Pass options.cursor of a
+    // page to get the next one; cursor is null on the last page
+    exportHistory:function(successCallback,errorCallback,options){
+        var fail = function(e){
+            var err = new PositionError(e.code, e.message);
+            if (errorCallback) {
+                errorCallback(err);
+            }
+        };
+        var win = function(page){
+            var positions = [];
+            var regions = [];
+            var i, r;
+            for (i = 0; i < page.positions.length; i++) {
+                positions.push(createPosition(page.positions[i]));
+            }
+            for (i = 0; i < page.regions.length; i++) {
+                r = page.regions[i];
+                regions.push(new Region(r.regionId,r.timestamp,r.regionType,r.transitionType,r.name));
+            }
+            successCallback({positions:positions, regions:regions, cursor:page.cursor});
+        };
+        exec(win, fail, "IndoorAtlas", "exportHistory", [options || {}]);
+    },
+    // Returns counters and histograms of the native positioning pipeline (Android)
+    getMetrics:function(successCallback,errorCallback){
+        var fail = function(e){
+            var err = new PositionError(e.code, e.message);
+            if (errorCallback) {
+                errorCallback(err);
+            }
+        };
+        exec(successCallback, fail, "IndoorAtlas", "getMetrics", []);
+    },
+    // Returns the threading mode and queue statistics of the native positioning thread
+    // (Android): {threadingMode, queueDepth, maxQueueDepth, executedTasks}
+    getWorkerStats:function(successCallback,errorCallback){
+        var fail = function(e){
+            var err = new PositionError(e.code, e.message);
+            if (errorCallback) {
+                errorCallback(err);
+            }
+        };
+        exec(successCallback, fail, "IndoorAtlas", "getWorkerStats", []);
+    },
+    // Records every position and region transition natively into binary trace files.
+    // options: maxFileBytes (size after which a new file is started), maxFiles (files to keep)
+    startTrace:function(successCallback,errorCallback,options){
+        var fail = function(e){
+            var err = new PositionError(e.code, e.message);
+            if (errorCallback) {
+                errorCallback(err);
+            }
+        };
+        var traceOptions = {};
+        if (options && options.maxFileBytes !== undefined && !isNaN(options.maxFileBytes)) {
+            traceOptions.maxFileBytes = options.maxFileBytes;
+        }
+        if (options && options.maxFiles !== undefined && !isNaN(options.maxFiles)) {
+            traceOptions.maxFiles = options.maxFiles;
+        }
+        exec(successCallback, fail, "IndoorAtlas", "startTrace", [traceOptions]);
+    },
+    stopTrace:function(successCallback,errorCallback){
+        var fail = function(e){
+            var err = new PositionError(e.code, e.message);
+            if (errorCallback) {
+                errorCallback(err);
+            }
+        };
+        exec(successCallback, fail, "IndoorAtlas", "stopTrace", []);
+    },
+    // Returns the file URIs of the recorded trace files, oldest first
+    exportTrace:function(successCallback,errorCallback){
+        var fail = function(e){
+            var err = new PositionError(e.code, e.message);
+            if (errorCallback) {
+                errorCallback(err);
+            }
+        };
+        exec(successCallback, fail, "IndoorAtlas", "exportTrace", []);
+    },
+    // Replaces positioning with the replay of recorded trace files. Does not need initialize.
+    // options: speed (multiplier of the recorded pace, 0 for as fast as possible, default 1),
+    // loop (default false), files (trace file URIs, default the trace recorded with startTrace)
+    startReplay:function(successCallback,errorCallback,options){
+        var fail = function(e){
+            var err = new PositionError(e.code, e.message);
+            if (errorCallback) {
+                errorCallback(err);
+            }
+        };
+        var replayOptions = {};
+        if (options && options.speed !== undefined && !isNaN(options.speed)) {
+            replayOptions.speed = options.speed;
+        }
+        if (options && options.loop !== undefined) {
+            replayOptions.loop = !!options.loop;
+        }
+        if (options && Array.isArray(options.files)) {
+            replayOptions.files = options.files;
+        }
+        exec(successCallback, fail, "IndoorAtlas", "startReplay", [replayOptions]);
+    },
+    stopReplay:function(successCallback,errorCallback){
+        var fail = function(e){
+            var err = new PositionError(e.code, e.message);
+            if (errorCallback) {
+                errorCallback(err);
+            }
+        };
+        exec(successCallback, fail, "IndoorAtlas", "stopReplay", []);
     }
 };
 module.exports = IndoorAtlas;
\ No newline at end of file
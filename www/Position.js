@@ -4,7 +4,7 @@ var Region = require('./Region');
 
 var Position = function(coords,region, timestamp) {
   if (coords) {
-    this.coords = new Coordinates(coords.latitude, coords.longitude, coords.altitude, coords.accuracy, coords.heading, coords.speed, coords.flr);
+    this.coords = new Coordinates(coords.latitude, coords.longitude, coords.altitude, coords.accuracy, coords.heading, coords.speed, coords.flr, coords.x, coords.y);
   } else {
     this.coords = new Coordinates();
   }
@@ -6,18 +6,22 @@
  * @param timestamp
  * @param regionType
  * @param transitionType
+ * @param name
  */
-var Region = function(regionId,timestamp,regionType,transitionType) {
+var Region = function(regionId,timestamp,regionType,transitionType,name) {
   this.regionId = regionId || '';
   this.timestamp = timestamp || null;
   this.regionType = regionType || null;
   this.transitionType = transitionType || null;
+  this.name = name || null;
 };
 
 Region.TRANSITION_TYPE_UNKNOWN = 0;
 Region.TRANSITION_TYPE_ENTER = 1;
 Region.TRANSITION_TYPE_EXIT = 2;
+Region.TRANSITION_TYPE_DWELL = 3;
 Region.TYPE_FLOORPLAN=1;
+Region.TYPE_GEOFENCE=100;
 Region.TYPE_UNKNOWN=-1;
 
 module.exports = Region;
\ No newline at end of file